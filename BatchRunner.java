@@ -0,0 +1,312 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Class to create a Batch Runner object.
+ * <p>
+ * The batch runner applies a file of edit commands without the menus, one command per line:
+ * <ul>
+ * <li>pay &lt;project number&gt; &lt;amount&gt; - adds a payment to the total paid.</li>
+ * <li>deadline &lt;project number&gt; &lt;yyyy-MM-dd&gt; - changes the project deadline.</li>
+ * <li>finalise &lt;project number&gt; - finalises the project.</li>
+ * </ul>
+ * Blank lines and lines starting with # are ignored. Each command is checked before it is
+ * sent to the database. Valid commands are grouped into transactions, and each group is sent
+ * as one JDBC batch. The result of every command is written to the output file, and a summary
+ * is printed once the file is complete.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class BatchRunner {
+
+	// ATTRIBUTES
+	private final ArrayList<Project> projects;
+	private final Statement statement;
+	private final Connection connection;
+	private final int groupSize;
+	private final DecimalFormat decimalFormat = new DecimalFormat("#.00", DecimalFormatSymbols.getInstance(Locale.US));
+
+	// Commands waiting to be committed
+	private final ArrayList<Command> group = new ArrayList<>();
+	// Projects finalised by commands that have not been committed
+	private final HashSet<Integer> pendingFinalised = new HashSet<>();
+	private int succeeded = 0, failed = 0;
+
+	/**
+	 * Class for a parsed batch command.
+	 */
+	private static class Command {
+		int lineNumber;
+		String line;
+		String action;
+		Project project;
+		double payment;
+		String deadlineString;
+		Date deadline;
+		String error;
+	}
+
+	/**
+	 * Batch Runner constructor.
+	 * @param projects The array list of project objects.
+	 * @param statement The line to the database to run updates.
+	 * @param connection The connection to the database used to control changes committed.
+	 * @param groupSize The maximum number of commands in one transaction.
+	 */
+	public BatchRunner(ArrayList<Project> projects, Statement statement, Connection connection, int groupSize) {
+		this.projects = projects;
+		this.statement = statement;
+		this.connection = connection;
+		this.groupSize = groupSize;
+	}
+
+	/**
+	 * Runs the commands in the command file, and writes the results to the output file.
+	 * @param commandFile The file of commands.
+	 * @param outputFile The file for the result of each command.
+	 * @throws IOException If the files cannot be read or written.
+	 * @throws SQLException If the connection to the database fails.
+	 */
+	public void run(Path commandFile, Path outputFile) throws IOException, SQLException {
+		long start = System.nanoTime();
+		int lineNumber = 0;
+		connection.setAutoCommit(false);
+		try (BufferedReader reader = Files.newBufferedReader(commandFile, StandardCharsets.UTF_8);
+				BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber += 1;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				try {
+					group.add(parse(lineNumber, line));
+				} catch (IllegalArgumentException e) {
+					// Invalid commands are kept in the group so the results are written in order
+					Command invalid = new Command();
+					invalid.lineNumber = lineNumber;
+					invalid.line = line;
+					invalid.error = e.getMessage();
+					group.add(invalid);
+				}
+				if (group.size() == groupSize) {
+					commitGroup(writer);
+				}
+			}
+			commitGroup(writer);
+		} finally {
+			connection.setAutoCommit(true);
+		}
+
+		// Print summary
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Batch complete: " + (succeeded + failed) + " commands, " + succeeded
+				+ " succeeded, " + failed + " failed.");
+		System.out.println("Time: " + String.format(Locale.US, "%.3f", seconds) + " s ("
+				+ String.format(Locale.US, "%.0f", (succeeded + failed) / Math.max(seconds, 1e-9)) + " commands/s)");
+		System.out.println("Results written to " + outputFile);
+	}
+
+	/**
+	 * Parses and checks a command line.
+	 * @param lineNumber The line number in the command file.
+	 * @param line The command line.
+	 * @return The parsed command.
+	 * @throws IllegalArgumentException If the command is not valid.
+	 */
+	private Command parse(int lineNumber, String line) {
+		String[] parts = line.split("\\s+");
+		Command command = new Command();
+		command.lineNumber = lineNumber;
+		command.line = line;
+		command.action = parts[0].toLowerCase();
+
+		int expectedParts = command.action.equals("finalise") ? 2 : 3;
+		if (!Arrays.asList("pay", "deadline", "finalise").contains(command.action)) {
+			throw new IllegalArgumentException("Unknown command");
+		}
+		if (parts.length != expectedParts) {
+			throw new IllegalArgumentException("Expected " + (expectedParts - 1) + " values");
+		}
+
+		// Project number
+		try {
+			command.project = Poise.findProject(projects, Integer.parseInt(parts[1]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Project number must be an integer");
+		} catch (SQLException e) {
+			throw new IllegalArgumentException("Project lookup failed: " + e.getMessage());
+		}
+		if (command.project == null) {
+			throw new IllegalArgumentException("That project does not exist");
+		}
+		if (command.project.isFinalised() || pendingFinalised.contains(command.project.getProjectNum())) {
+			throw new IllegalArgumentException("Finalised projects cannot be edited");
+		}
+
+		switch (command.action) {
+		case "pay":
+			try {
+				command.payment = Double.parseDouble(parts[2]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Payment must be in rands and cents");
+			}
+			if (command.payment <= 0) {
+				throw new IllegalArgumentException("Payment must be more than zero");
+			}
+			break;
+		case "deadline":
+			SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+			dateFormatter.setLenient(false);
+			try {
+				command.deadline = dateFormatter.parse(parts[2]);
+			} catch (ParseException e) {
+				throw new IllegalArgumentException("Date format incorrect");
+			}
+			command.deadlineString = parts[2];
+			break;
+		case "finalise":
+			pendingFinalised.add(command.project.getProjectNum());
+			break;
+		}
+		return command;
+	}
+
+	/**
+	 * Sends the group of commands to the database as one batch in one transaction.
+	 * <p>
+	 * If the batch fails, the transaction is rolled back and every command in the group
+	 * is reported as failed. Project objects are only updated once the group is committed.
+	 * Commands which failed their checks are not sent, and are reported with their error.
+	 * @param writer The writer for the output file.
+	 * @throws IOException If the output file cannot be written.
+	 */
+	private void commitGroup(BufferedWriter writer) throws IOException {
+		if (group.isEmpty()) {
+			return;
+		}
+		String completionDate = LocalDate.now().toString();
+		try {
+			for (Command command : group) {
+				if (command.error != null) {
+					continue;
+				}
+				int projectNum = command.project.getProjectNum();
+				switch (command.action) {
+				case "pay":
+					statement.addBatch("UPDATE projects SET totalPaid = totalPaid + '" + command.payment
+							+ "' WHERE PROJECTNUM = '" + projectNum + "'");
+					break;
+				case "deadline":
+					statement.addBatch("UPDATE projects SET deadline = '" + command.deadlineString
+							+ "' WHERE PROJECTNUM = '" + projectNum + "'");
+					break;
+				case "finalise":
+					statement.addBatch("UPDATE projects SET completionDate = '" + completionDate
+							+ "', projectName = '" + command.project.getProjectName() + " (Finalised)' "
+							+ "WHERE PROJECTNUM = '" + projectNum + "'");
+					break;
+				}
+			}
+			statement.executeBatch();
+			connection.commit();
+		} catch (SQLException e) {
+			try {
+				connection.rollback();
+			} catch (SQLException rollbackError) {
+				rollbackError.printStackTrace();
+			}
+			for (Command command : group) {
+				String error = (command.error != null) ? command.error
+						: "The database failed to update (" + e.getMessage() + ")";
+				writeError(writer, command, error);
+			}
+			clearGroup();
+			return;
+		}
+
+		// Update the project objects once the group is committed
+		for (Command command : group) {
+			if (command.error != null) {
+				writeError(writer, command, command.error);
+				continue;
+			}
+			writer.write("Line " + command.lineNumber + ": OK " + apply(command, completionDate));
+			writer.newLine();
+			succeeded += 1;
+		}
+		clearGroup();
+	}
+	
+	/**
+	 * Writes the error for a failed command to the output file.
+	 */
+	private void writeError(BufferedWriter writer, Command command, String error) throws IOException {
+		writer.write("Line " + command.lineNumber + ": ERROR " + error + " - " + command.line);
+		writer.newLine();
+		failed += 1;
+	}
+
+	/**
+	 * Applies a committed command to its project object and tells the project listeners.
+	 * @param command The committed command.
+	 * @param completionDate The completion date used for finalised projects.
+	 * @return The description of the change for the output file.
+	 */
+	private String apply(Command command, String completionDate) {
+		Project project = command.project;
+		switch (command.action) {
+		case "pay":
+			project.setTotalPaid(project.getTotalPaid() + command.payment);
+			for (ProjectListener listener : Poise.projectListeners) {
+				listener.paymentAdded(project, command.payment);
+			}
+			return "Payment of R" + decimalFormat.format(command.payment) + " added to project "
+					+ project.getProjectNum() + ", total paid R" + decimalFormat.format(project.getTotalPaid());
+		case "deadline":
+			Date oldDeadline = project.getDeadline();
+			project.setDeadline(command.deadline);
+			for (ProjectListener listener : Poise.projectListeners) {
+				listener.deadlineChanged(project, oldDeadline);
+			}
+			return "Deadline of project " + project.getProjectNum() + " changed to " + command.deadlineString;
+		default:
+			String oldName = project.getProjectName();
+			project.setCompletionDate(completionDate);
+			project.setProjectName(oldName + " (Finalised)");
+			for (ProjectListener listener : Poise.projectListeners) {
+				listener.projectFinalised(project, oldName);
+			}
+			String result = "Project " + project.getProjectNum() + " finalised";
+			if (project.getTotalPaid() < project.getTotalFee()) {
+				result += ", payable R" + decimalFormat.format(project.getTotalFee() - project.getTotalPaid());
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Clears the committed or failed group of commands.
+	 */
+	private void clearGroup() {
+		try {
+			statement.clearBatch();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		group.clear();
+		pendingFinalised.clear();
+	}
+}
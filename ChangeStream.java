@@ -0,0 +1,455 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Class to create a Change Stream object.
+ * <p>
+ * The change stream publishes every change made to the projects, so that other systems (such as
+ * a data warehouse or billing system) can follow the changes without reading all projects again.
+ * Each change is written as a JSON object on one line, with an offset, the time, the change type,
+ * the project number, and the values before and after the change:
+ * <pre>
+ * {"offset":42,"time":"2024-05-01T09:30:00Z","type":"payment","projectNum":7,"before":{"totalPaid":1000.0},"after":{"totalPaid":1500.0}}
+ * </pre>
+ * Offsets start at 0 and go up by one for each change, in the order the changes were made.
+ * <p>
+ * The lines are written by a background thread in batches, and each batch is forced to disk once,
+ * so the menus do not wait for the disk. Lines are written to segment files named after the offset
+ * of their first line (changes-00000000000000000000.jsonl), and a new segment is started when a
+ * segment reaches its maximum size. If a write fails, the segment is cut back to its last forced
+ * line and the write is tried again; if it still fails, no more changes are published, so the
+ * stream never has a gap. Only complete lines are read, and each line is found by the offset
+ * stored in it, so a consumer can follow the stream by keeping the next offset to read, e.g. with:
+ * <pre>
+ * java ChangeStream &lt;directory&gt; [offset]
+ * </pre>
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ChangeStream implements ProjectListener, AutoCloseable {
+
+	// Maximum size of a segment file
+	private static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+	// Time a batch waits for more changes, and the number of changes that are written without waiting
+	private static final long FLUSH_MILLIS = 50;
+	private static final int BATCH_SIZE = 256;
+	// Time between reads when following the stream
+	private static final long POLL_MILLIS = 500;
+	// Number of times a failed write is tried, and the time between tries
+	private static final int WRITE_ATTEMPTS = 3;
+	private static final long RETRY_MILLIS = 1000;
+
+	// ATTRIBUTES
+	private final Path directory;
+	private final Thread writer;
+	// Lines waiting to be written, and the offset of the first of them
+	private ArrayList<String> pending = new ArrayList<>();
+	private long pendingOffset;
+	private long nextOffset;
+	private boolean closed = false;
+	// Current segment and its size up to the last forced line (only used by the writer thread once started)
+	private FileChannel channel;
+	private long segmentBytes;
+
+	/**
+	 * Change Stream constructor.
+	 * <p>
+	 * Opens the latest segment in the directory, or creates the first segment, and starts the writer thread.
+	 * A line that was not completely written when the program last stopped is removed.
+	 * @param directory The directory for the segment files.
+	 * @throws IOException If the stream cannot be opened.
+	 */
+	public ChangeStream(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+		List<Long> segments = getSegments(directory);
+		long segmentStart = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+		Path segmentPath = getSegmentPath(directory, segmentStart);
+
+		// Find the end and the offset of the last complete line in the segment
+		nextOffset = segmentStart;
+		long end = 0;
+		if (Files.exists(segmentPath)) {
+			try (InputStream in = new BufferedInputStream(Files.newInputStream(segmentPath))) {
+				ByteArrayOutputStream line = new ByteArrayOutputStream();
+				long position = 0;
+				int next;
+				while ((next = in.read()) >= 0) {
+					position += 1;
+					if (next != '\n') {
+						line.write(next);
+						continue;
+					}
+					nextOffset = getOffset(new String(line.toByteArray(), StandardCharsets.UTF_8)) + 1;
+					end = position;
+					line.reset();
+				}
+			}
+		}
+		channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.truncate(end);
+		channel.position(end);
+		segmentBytes = end;
+		pendingOffset = nextOffset;
+
+		writer = new Thread(this::writeBatches, "change-stream-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Gets the offset that the next change will be given.
+	 * @return The next offset.
+	 */
+	public synchronized long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * Reads the changes from an offset.
+	 * <p>
+	 * Only lines that have been completely written are returned. The offset of each line is read
+	 * from the line.
+	 * @param directory The directory of the segment files.
+	 * @param fromOffset The offset of the first change to read.
+	 * @param maxChanges The maximum number of changes to read.
+	 * @return The JSON lines of the changes, in offset order (without line breaks).
+	 * @throws IOException If the segments cannot be read.
+	 */
+	public static ArrayList<String> read(Path directory, long fromOffset, int maxChanges) throws IOException {
+		ArrayList<String> changes = new ArrayList<>();
+		List<Long> segments = getSegments(directory);
+		for (int i = 0; i < segments.size() && changes.size() < maxChanges; i++) {
+			// Skip segments which end before the offset
+			if (i + 1 < segments.size() && segments.get(i + 1) <= fromOffset) {
+				continue;
+			}
+			try (InputStream in = new BufferedInputStream(Files.newInputStream(getSegmentPath(directory, segments.get(i))))) {
+				ByteArrayOutputStream line = new ByteArrayOutputStream();
+				int next;
+				while (changes.size() < maxChanges && (next = in.read()) >= 0) {
+					if (next != '\n') {
+						line.write(next);
+						continue;
+					}
+					String change = new String(line.toByteArray(), StandardCharsets.UTF_8);
+					if (getOffset(change) >= fromOffset) {
+						changes.add(change);
+					}
+					line.reset();
+				}
+			}
+		}
+		return changes;
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public void projectAdded(Project project) {
+		publish("added", project, "null", toJson(project));
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+		publish("deadline", project, "{\"deadline\":\"" + formatter.format(oldDeadline) + "\"}",
+				"{\"deadline\":\"" + formatter.format(project.getDeadline()) + "\"}");
+	}
+
+	@Override
+	public void paymentAdded(Project project, double payment) {
+		publish("payment", project, "{\"totalPaid\":" + (project.getTotalPaid() - payment) + "}",
+				"{\"totalPaid\":" + project.getTotalPaid() + "}");
+	}
+
+	@Override
+	public void contractorReplaced(Project project, ProjectContact oldContractor) {
+		publish("contractor", project, "{\"contractor\":" + toJson(oldContractor) + "}",
+				"{\"contractor\":" + toJson(project.getContractor()) + "}");
+	}
+
+	@Override
+	public void projectFinalised(Project project, String oldProjectName) {
+		publish("finalised", project, "{\"projectName\":" + toJsonString(oldProjectName) + ",\"completionDate\":null}",
+				"{\"projectName\":" + toJsonString(project.getProjectName())
+				+ ",\"completionDate\":" + toJsonString(project.getCompletionDate()) + "}");
+	}
+
+	/**
+	 * Writes the changes that are waiting, stops the writer thread and closes the segment file.
+	 * @throws IOException If the changes cannot be written.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	/**
+	 * Adds a change to the lines waiting to be written, giving it the next offset.
+	 */
+	private synchronized void publish(String type, Project project, String before, String after) {
+		if (closed) {
+			return;
+		}
+		pending.add("{\"offset\":" + nextOffset + ",\"time\":\"" + Instant.now() + "\",\"type\":\"" + type
+				+ "\",\"projectNum\":" + project.getProjectNum() + ",\"before\":" + before + ",\"after\":" + after + "}\n");
+		nextOffset += 1;
+		if (pending.size() == 1 || pending.size() >= BATCH_SIZE) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Runs on the writer thread: waits for changes, then writes and forces them in batches.
+	 */
+	private void writeBatches() {
+		while (true) {
+			ArrayList<String> batch;
+			long batchOffset;
+			synchronized (this) {
+				try {
+					while (pending.isEmpty() && !closed) {
+						wait();
+					}
+					// Wait a little for more changes, so they are forced to disk together
+					if (pending.size() < BATCH_SIZE && !closed) {
+						wait(FLUSH_MILLIS);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				batchOffset = pendingOffset;
+				pending = new ArrayList<>();
+				pendingOffset = nextOffset;
+			}
+			// Write the lines a segment at a time, trying again from the last forced line if a write fails
+			int written = 0;
+			int failures = 0;
+			while (written < batch.size()) {
+				try {
+					written += write(batch.subList(written, batch.size()), batchOffset + written);
+					failures = 0;
+				} catch (IOException e) {
+					failures += 1;
+					if (failures == WRITE_ATTEMPTS || !rollBack()) {
+						stop(batchOffset + written, e);
+						return;
+					}
+					try {
+						Thread.sleep(RETRY_MILLIS);
+					} catch (InterruptedException interrupted) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the lines that fit in the current segment, and forces them to disk. If the segment is
+	 * full, a new segment is started instead, and no lines are written.
+	 * @return The number of lines written.
+	 */
+	private int write(List<String> lines, long firstOffset) throws IOException {
+		ArrayList<ByteBuffer> buffers = new ArrayList<>();
+		long bytes = segmentBytes;
+		for (String text : lines) {
+			byte[] line = text.getBytes(StandardCharsets.UTF_8);
+			if (bytes > 0 && bytes + line.length > SEGMENT_SIZE) {
+				break;
+			}
+			buffers.add(ByteBuffer.wrap(line));
+			bytes += line.length;
+		}
+		if (buffers.isEmpty()) {
+			// The full segment is only closed once the new one is open, so the channel is always open
+			FileChannel full = channel;
+			channel = FileChannel.open(getSegmentPath(directory, firstOffset), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			segmentBytes = 0;
+			full.close();
+			return 0;
+		}
+		int count = buffers.size();
+		writeBuffers(buffers);
+		channel.force(false);
+		segmentBytes = bytes;
+		return count;
+	}
+
+	/**
+	 * Cuts the current segment back to its last forced line, removing any part of a failed write.
+	 * @return True if the segment was cut back, so the write can be tried again.
+	 */
+	private boolean rollBack() {
+		try {
+			channel.truncate(segmentBytes);
+			channel.position(segmentBytes);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stops publishing after a write has failed. The lines from the offset are not written, and
+	 * later changes are not given offsets, so the stream stays without gaps.
+	 */
+	private void stop(long offset, IOException e) {
+		synchronized (this) {
+			closed = true;
+			pending.clear();
+			nextOffset = offset;
+		}
+		System.out.println("Error! Changes could not be written to the change stream. "
+				+ "Changes from offset " + offset + " are not published.");
+		e.printStackTrace();
+	}
+
+	/**
+	 * Writes the buffers to the segment with gathering writes.
+	 */
+	private void writeBuffers(ArrayList<ByteBuffer> buffers) throws IOException {
+		ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+		int first = 0;
+		while (first < array.length) {
+			channel.write(array, first, array.length - first);
+			while (first < array.length && !array[first].hasRemaining()) {
+				first += 1;
+			}
+		}
+		buffers.clear();
+	}
+
+	/**
+	 * Builds a JSON object with all values of a project, using the field names of the project export.
+	 */
+	private static String toJson(Project project) {
+		return "{\"projectNum\":" + project.getProjectNum()
+				+ ",\"projectName\":" + toJsonString(project.getProjectName())
+				+ ",\"buildType\":" + toJsonString(project.getBuildType())
+				+ ",\"erfNum\":" + project.getERFNum()
+				+ ",\"address\":" + toJsonString(project.getAddress())
+				+ ",\"totalFee\":" + project.getTotalFee()
+				+ ",\"totalPaid\":" + project.getTotalPaid()
+				+ ",\"deadline\":\"" + new SimpleDateFormat("yyyy-MM-dd").format(project.getDeadline()) + "\""
+				+ ",\"customer\":" + toJson(project.getCustomer())
+				+ ",\"contractor\":" + toJson(project.getContractor())
+				+ ",\"architect\":" + toJson(project.getArchitect())
+				+ ",\"projectManager\":" + toJsonString(project.getProjectManager())
+				+ ",\"completionDate\":" + toJsonString(project.getCompletionDate()) + "}";
+	}
+
+	/**
+	 * Builds a JSON object with the values of a project contact.
+	 */
+	private static String toJson(ProjectContact contact) {
+		return "{\"name\":" + toJsonString(contact.getContactName())
+				+ ",\"phone\":" + toJsonString(contact.getPhone())
+				+ ",\"email\":" + toJsonString(contact.getEmail())
+				+ ",\"address\":" + toJsonString(contact.getContactAddress()) + "}";
+	}
+
+	/**
+	 * Builds a quoted JSON string, or null.
+	 */
+	private static String toJsonString(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringWriter writer = new StringWriter();
+		try {
+			ProjectExporter.writeJsonString(value, writer);
+		} catch (IOException e) {
+			// A string writer does not throw
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Gets the first offsets of the segment files in the directory, in order.
+	 */
+	private static List<Long> getSegments(Path directory) throws IOException {
+		ArrayList<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "changes-*.jsonl")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				segments.add(Long.parseLong(name.substring(8, name.length() - 6)));
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Gets the offset stored at the start of a change line.
+	 */
+	private static long getOffset(String change) throws IOException {
+		int start = change.indexOf(':') + 1;
+		int end = change.indexOf(',', start);
+		try {
+			return Long.parseLong(change.substring(start, end));
+		} catch (RuntimeException e) {
+			throw new IOException("The change has no offset: " + change);
+		}
+	}
+
+	private static Path getSegmentPath(Path directory, long firstOffset) {
+		return directory.resolve(String.format("changes-%020d.jsonl", firstOffset));
+	}
+
+	/**
+	 * Follows the change stream from the command line, printing each change as it is written.
+	 * <p>
+	 * Arguments: the directory of the segment files, and optionally the offset to start from (default 0).
+	 * @param args The command line arguments.
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: java ChangeStream <directory> [offset]");
+			return;
+		}
+		Path directory = Paths.get(args[0]);
+		long offset = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+		try {
+			while (true) {
+				ArrayList<String> changes = read(directory, offset, 1000);
+				for (String change : changes) {
+					System.out.println(change);
+				}
+				if (!changes.isEmpty()) {
+					offset = getOffset(changes.get(changes.size() - 1)) + 1;
+				}
+				else {
+					Thread.sleep(POLL_MILLIS);
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Error! The change stream could not be read.");
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,195 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Class to create a Contact Cache object.
+ * <p>
+ * The contact cache is used when projects are loaded without their contact details.
+ * Project objects are then created with project contact objects that only hold the
+ * contact type and name. The details are read from the customers, contractors and
+ * architects tables when the projects are printed, invoiced or edited, using one
+ * query per table for all of the contacts that are not yet cached.
+ * <p>
+ * If the contacts are in the unified contacts table, all of the contacts that are not yet
+ * cached are read with one query on the contact name index, whatever their roles.
+ *
+ * @author Lindsey
+ * @see ProjectContact
+ * @see Poise
+ */
+public class ContactCache {
+
+	// Maximum number of names in one IN (...) list
+	private static final int BATCH_SIZE = 500;
+
+	// ATTRIBUTES
+	private final Statement statement;
+	private final HashMap<String, ProjectContact> customers = new HashMap<>();
+	private final HashMap<String, ProjectContact> contractors = new HashMap<>();
+	private final HashMap<String, ProjectContact> architects = new HashMap<>();
+
+	/**
+	 * Contact Cache constructor.
+	 * @param statement The line to the database for running queries.
+	 */
+	public ContactCache(Statement statement) {
+		this.statement = statement;
+	}
+
+	/**
+	 * Gets the cached project contact object, or a project contact object that only
+	 * holds the contact type and name if the contact has not been loaded.
+	 * @param contact The contact type - "Customer", "Contractor" or "Architect".
+	 * @param contactName The contact's name.
+	 * @return The project contact object.
+	 */
+	public synchronized ProjectContact getContact(String contact, String contactName) {
+		ProjectContact cached = getContacts(contact).get(contactName);
+		if (cached != null) {
+			return cached;
+		}
+		return ProjectContact.create(contact, contactName, null, null, null);
+	}
+
+	/**
+	 * Adds a project contact object to the cache, for contacts added to the database.
+	 * @param projectContact The project contact object.
+	 */
+	public synchronized void put(ProjectContact projectContact) {
+		getContacts(projectContact.getContact()).put(projectContact.getContactName(), projectContact);
+	}
+
+	/**
+	 * Loads the contact details for a list of projects.
+	 * <p>
+	 * The names of the contacts that are not cached are collected for each table, and read
+	 * from the database in batches. The project contact objects of the projects are then
+	 * replaced with the cached objects, which hold all the contact details.
+	 * @param projects The project objects to load the contacts for.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public synchronized void loadContacts(List<Project> projects) throws SQLException {
+		// Collect the names that have not been loaded
+		LinkedHashSet<String> customerNames = new LinkedHashSet<>();
+		LinkedHashSet<String> contractorNames = new LinkedHashSet<>();
+		LinkedHashSet<String> architectNames = new LinkedHashSet<>();
+		for (Project project : projects) {
+			addMissing(customerNames, customers, project.customer);
+			addMissing(contractorNames, contractors, project.contractor);
+			addMissing(architectNames, architects, project.architect);
+		}
+
+		if (Poise.unifiedContacts) {
+			loadUnified(customerNames, contractorNames, architectNames);
+		}
+		else {
+			load("Customer", "customers", "customer", customerNames);
+			load("Contractor", "contractors", "contractor", contractorNames);
+			load("Architect", "architects", "architect", architectNames);
+		}
+
+		// Replace the name-only contacts with the loaded contacts
+		for (Project project : projects) {
+			project.customer = getContact("Customer", project.customer.getContactName());
+			project.contractor = getContact("Contractor", project.contractor.getContactName());
+			project.architect = getContact("Architect", project.architect.getContactName());
+		}
+	}
+
+	/**
+	 * Adds the contact name to the set of names to load, if it is not cached.
+	 */
+	private static void addMissing(Set<String> names, Map<String, ProjectContact> cached, ProjectContact projectContact) {
+		if (!cached.containsKey(projectContact.getContactName())) {
+			names.add(projectContact.getContactName());
+		}
+	}
+
+	/**
+	 * Reads the contacts with the names from a contact table, in batches of names.
+	 * @param contact The contact type - "Customer", "Contractor" or "Architect".
+	 * @param table The name of the contact table.
+	 * @param nameColumn The name of the table's contact name column.
+	 * @param names The names of the contacts to read.
+	 * @throws SQLException If a database error occurs.
+	 */
+	private void load(String contact, String table, String nameColumn, Collection<String> names) throws SQLException {
+		HashMap<String, ProjectContact> cached = getContacts(contact);
+		Iterator<String> iterator = names.iterator();
+		while (iterator.hasNext()) {
+			StringBuilder inList = nextBatch(iterator);
+			ResultSet results = statement.executeQuery("SELECT " + nameColumn + ", Telephone, Email, Address "
+					+ "FROM " + table + " WHERE " + nameColumn + " IN (" + inList + ")");
+			while (results.next()) {
+				ProjectContact projectContact = ProjectContact.create(contact, results.getString(1),
+						results.getString(2), results.getString(3), results.getString(4));
+				cached.put(projectContact.getContactName(), projectContact);
+			}
+			results.close();
+		}
+	}
+
+	/**
+	 * Reads the contacts with the names from the unified contacts table, in batches of names.
+	 * <p>
+	 * Each name is read once, and the contact is cached for each role it was needed for.
+	 * @param customerNames The names of the customers to read.
+	 * @param contractorNames The names of the contractors to read.
+	 * @param architectNames The names of the architects to read.
+	 * @throws SQLException If a database error occurs.
+	 */
+	private void loadUnified(Set<String> customerNames, Set<String> contractorNames, Set<String> architectNames) throws SQLException {
+		LinkedHashSet<String> names = new LinkedHashSet<>(customerNames);
+		names.addAll(contractorNames);
+		names.addAll(architectNames);
+		Iterator<String> iterator = names.iterator();
+		while (iterator.hasNext()) {
+			StringBuilder inList = nextBatch(iterator);
+			ResultSet results = statement.executeQuery("SELECT contactName, Telephone, Email, Address "
+					+ "FROM contacts WHERE contactName IN (" + inList + ")");
+			while (results.next()) {
+				String contactName = results.getString(1);
+				if (customerNames.contains(contactName)) {
+					put(ProjectContact.create("Customer", contactName, results.getString(2), results.getString(3), results.getString(4)));
+				}
+				if (contractorNames.contains(contactName)) {
+					put(ProjectContact.create("Contractor", contactName, results.getString(2), results.getString(3), results.getString(4)));
+				}
+				if (architectNames.contains(contactName)) {
+					put(ProjectContact.create("Architect", contactName, results.getString(2), results.getString(3), results.getString(4)));
+				}
+			}
+			results.close();
+		}
+	}
+
+	/**
+	 * Builds the IN (...) list for the next batch of names.
+	 */
+	private static StringBuilder nextBatch(Iterator<String> iterator) {
+		StringBuilder inList = new StringBuilder();
+		for (int i = 0; i < BATCH_SIZE && iterator.hasNext(); i++) {
+			if (i > 0) {
+				inList.append(", ");
+			}
+			inList.append("'").append(iterator.next().replace("'", "''")).append("'");
+		}
+		return inList;
+	}
+
+	/**
+	 * Gets the cached contacts for the contact type.
+	 */
+	private HashMap<String, ProjectContact> getContacts(String contact) {
+		switch (contact) {
+		case "Customer":
+			return customers;
+		case "Contractor":
+			return contractors;
+		default:
+			return architects;
+		}
+	}
+}
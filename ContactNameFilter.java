@@ -0,0 +1,176 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Class to create a Contact Name Filter object.
+ * <p>
+ * The contact name filter holds the names in the customers, contractors and architects tables
+ * (or of each role in the unified contacts table), so that a new contact with a name that
+ * already exists can be rejected before any SQL is sent.
+ * Each contact type has a Bloom filter, which answers most "not found" checks with a few bit
+ * tests, backed by an exact set of names, which is only checked when the Bloom filter finds
+ * a possible match. Names are not case sensitive, as in the database.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class ContactNameFilter {
+
+	// Number of bits set for each name
+	private static final int HASHES = 7;
+	// Number of filter bits for each name, which gives about 1% false positives
+	private static final int BITS_PER_NAME = 10;
+
+	/**
+	 * Class for the Bloom filter and exact set of one contact type.
+	 */
+	private static class Filter {
+		long[] bits = new long[16];
+		HashSet<String> names = new HashSet<>();
+
+		void add(String name) {
+			if (names.add(name)) {
+				// Rebuild with more bits when the filter is too full to be useful
+				if ((long) names.size() * BITS_PER_NAME > (long) bits.length * 64) {
+					bits = new long[bits.length * 2];
+					for (String existing : names) {
+						setBits(existing);
+					}
+				}
+				else {
+					setBits(name);
+				}
+			}
+		}
+
+		boolean mightContain(String name) {
+			int hash1 = name.hashCode();
+			int hash2 = mix(hash1);
+			long bitCount = (long) bits.length * 64;
+			for (int i = 0; i < HASHES; i++) {
+				long bit = Math.floorMod(hash1 + (long) i * hash2, bitCount);
+				if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void setBits(String name) {
+			int hash1 = name.hashCode();
+			int hash2 = mix(hash1);
+			long bitCount = (long) bits.length * 64;
+			for (int i = 0; i < HASHES; i++) {
+				long bit = Math.floorMod(hash1 + (long) i * hash2, bitCount);
+				bits[(int) (bit >>> 6)] |= 1L << bit;
+			}
+		}
+
+		// Second hash for double hashing, made odd so every step moves
+		static int mix(int hash) {
+			hash ^= hash >>> 16;
+			hash *= 0x85ebca6b;
+			hash ^= hash >>> 13;
+			return hash | 1;
+		}
+	}
+
+	// ATTRIBUTES
+	private final HashMap<String, Filter> filters = new HashMap<>();
+	private long checks = 0, bloomRejections = 0;
+
+	/**
+	 * Contact Name Filter constructor.
+	 */
+	public ContactNameFilter() {
+		filters.put("Customer", new Filter());
+		filters.put("Contractor", new Filter());
+		filters.put("Architect", new Filter());
+	}
+
+	/**
+	 * Adds the names in the contact tables of a database.
+	 * <p>
+	 * Can be called once for each shard database.
+	 * @param statement The line to the database for running queries.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public synchronized void load(Statement statement) throws SQLException {
+		if (Poise.unifiedContacts) {
+			// One contact may have several roles
+			for (String role : UnifiedContacts.ROLES) {
+				load(statement, role, "SELECT contactName FROM contacts WHERE " + UnifiedContacts.hasRole(role));
+			}
+			return;
+		}
+		load(statement, "Customer", "SELECT customer FROM customers");
+		load(statement, "Contractor", "SELECT contractor FROM contractors");
+		load(statement, "Architect", "SELECT architect FROM architects");
+	}
+
+	private void load(Statement statement, String contactType, String query) throws SQLException {
+		ResultSet results = statement.executeQuery(query);
+		while (results.next()) {
+			add(contactType, results.getString(1));
+		}
+		results.close();
+	}
+
+	/**
+	 * Checks if a contact name already exists.
+	 * @param contactType The contact type - "Customer", "Contractor" or "Architect".
+	 * @param name The contact name.
+	 * @return True if the name is in the contact table.
+	 */
+	public synchronized boolean contains(String contactType, String name) {
+		if (name == null) {
+			return false;
+		}
+		String key = name.toLowerCase();
+		Filter filter = filters.get(contactType);
+		checks += 1;
+		if (!filter.mightContain(key)) {
+			bloomRejections += 1;
+			return false;
+		}
+		return filter.names.contains(key);
+	}
+
+	/**
+	 * Adds a contact name, once it has been added to the database.
+	 * @param contactType The contact type - "Customer", "Contractor" or "Architect".
+	 * @param name The contact name.
+	 */
+	public synchronized void add(String contactType, String name) {
+		if (name != null) {
+			filters.get(contactType).add(name.toLowerCase());
+		}
+	}
+
+	/**
+	 * Removes a contact name, once it has been deleted from the database.
+	 * <p>
+	 * The name stays in the Bloom filter, so later checks for it are answered by the exact set.
+	 * @param contactType The contact type - "Customer", "Contractor" or "Architect".
+	 * @param name The contact name.
+	 */
+	public synchronized void remove(String contactType, String name) {
+		if (name != null) {
+			filters.get(contactType).names.remove(name.toLowerCase());
+		}
+	}
+
+	/**
+	 * Overrides the toString method.
+	 * <p>
+	 * Builds a summary of the number of names and how many checks were answered by the Bloom filters.
+	 */
+	public synchronized String toString() {
+		return "Contact name filter: " + filters.get("Customer").names.size() + " customers, "
+				+ filters.get("Contractor").names.size() + " contractors, "
+				+ filters.get("Architect").names.size() + " architects, "
+				+ bloomRejections + " of " + checks + " checks answered by the Bloom filters";
+	}
+}
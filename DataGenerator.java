@@ -0,0 +1,326 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Class to create a Data Generator object.
+ * <p>
+ * The data generator fills the projects, sites, customers, contractors and architects tables
+ * (or the unified contacts table) with realistic test data, so the program can be tried with
+ * as many projects as a real company. As with projects added from the menu, each project has its
+ * own site, customer, contractor and architect.
+ * <p>
+ * Run from the command line:
+ * <pre>
+ * java DataGenerator --projects=100000 [--seed=42] [--base-date=2024-01-01] [--url=jdbc:...]
+ *                    [--create-tables] [--create-procedures]
+ * </pre>
+ * New projects are numbered after the highest project number and ERF number in the database, and
+ * the deadlines are set around the base date (today if it is not given). The same seed and base
+ * date give the same data when they are added to the same database.
+ *
+ * @author Lindsey
+ * @see WorkloadDriver
+ */
+public class DataGenerator {
+
+	// Number of rows sent in one batch and committed in one transaction
+	private static final int BATCH_SIZE = 1000;
+
+	/** The CREATE TABLE statements for the poisePMS tables, which work in MySQL and in H2 in MySQL mode. */
+	static final String[] TABLES = {
+			"CREATE TABLE IF NOT EXISTS sites (ERFNUM INT NOT NULL PRIMARY KEY, Address VARCHAR(50))",
+			"CREATE TABLE IF NOT EXISTS customers (customer VARCHAR(50) NOT NULL PRIMARY KEY, "
+					+ "Telephone VARCHAR(20), Email VARCHAR(50), Address VARCHAR(50))",
+			"CREATE TABLE IF NOT EXISTS contractors (contractor VARCHAR(50) NOT NULL PRIMARY KEY, "
+					+ "Telephone VARCHAR(20), Email VARCHAR(50), Address VARCHAR(50))",
+			"CREATE TABLE IF NOT EXISTS architects (architect VARCHAR(50) NOT NULL PRIMARY KEY, "
+					+ "Telephone VARCHAR(20), Email VARCHAR(50), Address VARCHAR(50))",
+			"CREATE TABLE IF NOT EXISTS projects (PROJECTNUM INT NOT NULL PRIMARY KEY, "
+					+ "projectName VARCHAR(50) NOT NULL, BUILDTYPE VARCHAR(50), ERFNUM INT, TOTALFEE DOUBLE, "
+					+ "totalPaid DOUBLE, deadline DATE, customer VARCHAR(50), contractor VARCHAR(50), "
+					+ "architect VARCHAR(50), projectManager VARCHAR(50), completionDate VARCHAR(20), "
+					+ "FOREIGN KEY (ERFNUM) REFERENCES sites (ERFNUM), "
+					+ "FOREIGN KEY (customer) REFERENCES customers (customer), "
+					+ "FOREIGN KEY (contractor) REFERENCES contractors (contractor), "
+					+ "FOREIGN KEY (architect) REFERENCES architects (architect))"
+	};
+
+	/**
+	 * The stored procedure that adds a project's site, contacts and project record in one call (MySQL).
+	 * All of the rows are committed in one transaction, or all are rolled back if any insert fails.
+	 */
+	static final String ADD_PROJECT_PROCEDURE = "CREATE PROCEDURE add_project(IN p_projectNum INT, "
+			+ "IN p_projectName VARCHAR(50), IN p_buildType VARCHAR(50), IN p_erfNum INT, IN p_address VARCHAR(50), "
+			+ "IN p_totalFee DOUBLE, IN p_totalPaid DOUBLE, IN p_deadline DATE, "
+			+ "IN p_customer VARCHAR(50), IN p_customerPhone VARCHAR(20), IN p_customerEmail VARCHAR(50), IN p_customerAddress VARCHAR(50), "
+			+ "IN p_contractor VARCHAR(50), IN p_contractorPhone VARCHAR(20), IN p_contractorEmail VARCHAR(50), IN p_contractorAddress VARCHAR(50), "
+			+ "IN p_architect VARCHAR(50), IN p_architectPhone VARCHAR(20), IN p_architectEmail VARCHAR(50), IN p_architectAddress VARCHAR(50), "
+			+ "IN p_projectManager VARCHAR(50)) "
+			+ "BEGIN "
+			+ "DECLARE EXIT HANDLER FOR SQLEXCEPTION BEGIN ROLLBACK; RESIGNAL; END; "
+			+ "START TRANSACTION; "
+			+ "INSERT INTO sites VALUES (p_erfNum, p_address); "
+			+ "INSERT INTO customers VALUES (p_customer, p_customerPhone, p_customerEmail, p_customerAddress); "
+			+ "INSERT INTO contractors VALUES (p_contractor, p_contractorPhone, p_contractorEmail, p_contractorAddress); "
+			+ "INSERT INTO architects VALUES (p_architect, p_architectPhone, p_architectEmail, p_architectAddress); "
+			+ "INSERT INTO projects VALUES (p_projectNum, p_projectName, p_buildType, p_erfNum, p_totalFee, p_totalPaid, "
+			+ "p_deadline, p_customer, p_contractor, p_architect, p_projectManager, NULL); "
+			+ "COMMIT; "
+			+ "END";
+
+	/**
+	 * The add_project stored procedure for a database with the unified contacts table (MySQL).
+	 * A contact that already exists is given the new role instead of being added again, keeping
+	 * its stored details (which the program loads when the contact is entered).
+	 */
+	static final String ADD_PROJECT_UNIFIED_PROCEDURE = "CREATE PROCEDURE add_project(IN p_projectNum INT, "
+			+ "IN p_projectName VARCHAR(50), IN p_buildType VARCHAR(50), IN p_erfNum INT, IN p_address VARCHAR(50), "
+			+ "IN p_totalFee DOUBLE, IN p_totalPaid DOUBLE, IN p_deadline DATE, "
+			+ "IN p_customer VARCHAR(50), IN p_customerPhone VARCHAR(20), IN p_customerEmail VARCHAR(50), IN p_customerAddress VARCHAR(50), "
+			+ "IN p_contractor VARCHAR(50), IN p_contractorPhone VARCHAR(20), IN p_contractorEmail VARCHAR(50), IN p_contractorAddress VARCHAR(50), "
+			+ "IN p_architect VARCHAR(50), IN p_architectPhone VARCHAR(20), IN p_architectEmail VARCHAR(50), IN p_architectAddress VARCHAR(50), "
+			+ "IN p_projectManager VARCHAR(50)) "
+			+ "BEGIN "
+			+ "DECLARE EXIT HANDLER FOR SQLEXCEPTION BEGIN ROLLBACK; RESIGNAL; END; "
+			+ "START TRANSACTION; "
+			+ "INSERT INTO sites VALUES (p_erfNum, p_address); "
+			+ "INSERT INTO contacts (contactName, roles, Telephone, Email, Address) "
+			+ "VALUES (p_customer, 'Customer', p_customerPhone, p_customerEmail, p_customerAddress) "
+			+ "ON DUPLICATE KEY UPDATE roles = IF(FIND_IN_SET('Customer', roles), roles, CONCAT(roles, ',Customer')); "
+			+ "INSERT INTO contacts (contactName, roles, Telephone, Email, Address) "
+			+ "VALUES (p_contractor, 'Contractor', p_contractorPhone, p_contractorEmail, p_contractorAddress) "
+			+ "ON DUPLICATE KEY UPDATE roles = IF(FIND_IN_SET('Contractor', roles), roles, CONCAT(roles, ',Contractor')); "
+			+ "INSERT INTO contacts (contactName, roles, Telephone, Email, Address) "
+			+ "VALUES (p_architect, 'Architect', p_architectPhone, p_architectEmail, p_architectAddress) "
+			+ "ON DUPLICATE KEY UPDATE roles = IF(FIND_IN_SET('Architect', roles), roles, CONCAT(roles, ',Architect')); "
+			+ "INSERT INTO projects VALUES (p_projectNum, p_projectName, p_buildType, p_erfNum, p_totalFee, p_totalPaid, "
+			+ "p_deadline, p_customer, p_contractor, p_architect, p_projectManager, NULL); "
+			+ "COMMIT; "
+			+ "END";
+
+	private static final String[] FIRST_NAMES = {"Thabo", "Lerato", "Sipho", "Naledi", "Johan", "Anika",
+			"Pieter", "Zanele", "Kagiso", "Ayesha", "Michael", "Sarah", "Themba", "Nomvula", "Riaan",
+			"Fatima", "David", "Busisiwe", "Andre", "Palesa", "James", "Chantal", "Mandla", "Grace"};
+	private static final String[] LAST_NAMES = {"Nkosi", "Dlamini", "van der Merwe", "Botha", "Mokoena",
+			"Naidoo", "Khumalo", "Pretorius", "Smith", "Ndlovu", "Pillay", "Jacobs", "Mahlangu", "Steyn",
+			"Zulu", "Adams", "Molefe", "Venter", "Govender", "Williams", "Mthembu", "Coetzee", "Sithole"};
+	private static final String[] STREETS = {"Main Road", "Church Street", "Oak Avenue", "Long Street",
+			"Voortrekker Road", "Jan Smuts Avenue", "Beach Road", "Kloof Street", "Station Road", "Hill Street"};
+	private static final String[] SUBURBS = {"Rondebosch", "Sandton", "Durbanville", "Umhlanga",
+			"Centurion", "Stellenbosch", "Rosebank", "Bellville", "Morningside", "Somerset West"};
+	private static final String[] BUILD_TYPES = {"House", "House", "House", "Townhouse", "Apartment Block",
+			"Office", "Warehouse", "Retail", "School", "Clinic"};
+	private static final String[] COMPANY_TYPES = {"Builders", "Construction", "Contractors", "Projects"};
+	private static final String[] ARCHITECT_TYPES = {"Architects", "Design Studio", "Architecture"};
+
+	// ATTRIBUTES
+	private final Random random;
+	private final LocalDate baseDate;
+	private final String[] projectManagers = new String[20];
+
+	/**
+	 * Data Generator constructor, with the deadlines set around today.
+	 * @param seed The seed for the random values.
+	 */
+	public DataGenerator(long seed) {
+		this(seed, LocalDate.now());
+	}
+
+	/**
+	 * Data Generator constructor.
+	 * @param seed The seed for the random values.
+	 * @param baseDate The date the deadlines are set around.
+	 */
+	public DataGenerator(long seed, LocalDate baseDate) {
+		random = new Random(seed);
+		this.baseDate = baseDate;
+		for (int i = 0; i < projectManagers.length; i++) {
+			projectManagers[i] = pick(FIRST_NAMES) + " " + pick(LAST_NAMES);
+		}
+	}
+
+	/**
+	 * Creates the poisePMS tables, if they do not exist.
+	 * @param statement The line to the database for running updates.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public static void createTables(Statement statement) throws SQLException {
+		for (String table : TABLES) {
+			statement.executeUpdate(table);
+		}
+	}
+
+	/**
+	 * Creates (or replaces) the add_project stored procedure, used to add a project in one call.
+	 * <p>
+	 * The procedure adds the contacts to the unified contacts table if the database has it.
+	 * <p>
+	 * Databases without MySQL stored procedures (e.g. H2) are left without it, and projects are
+	 * then added with separate inserts.
+	 * @param statement The line to the database for running updates.
+	 * @return True if the procedure was created.
+	 */
+	public static boolean createProcedures(Statement statement) {
+		try {
+			statement.executeUpdate("DROP PROCEDURE IF EXISTS add_project");
+			statement.executeUpdate(UnifiedContacts.hasContactsTable(statement.getConnection())
+					? ADD_PROJECT_UNIFIED_PROCEDURE : ADD_PROJECT_PROCEDURE);
+			return true;
+		} catch (SQLException e) {
+			System.out.println("The add_project procedure could not be created. Projects will be added with separate inserts.");
+			return false;
+		}
+	}
+
+	/**
+	 * Adds generated projects, with their sites and contacts, to the database.
+	 * @param connection The connection to the database used to control changes committed.
+	 * @param statement The line to the database for running updates.
+	 * @param count The number of projects to add.
+	 * @return The number of projects added.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public int generate(Connection connection, Statement statement, int count) throws SQLException {
+		// Start after the existing projects and sites
+		ResultSet results = statement.executeQuery("SELECT COALESCE(MAX(PROJECTNUM), 0) FROM projects");
+		results.next();
+		int firstProject = results.getInt(1) + 1;
+		results.close();
+		results = statement.executeQuery("SELECT COALESCE(MAX(ERFNUM), 0) FROM sites");
+		results.next();
+		int firstErf = results.getInt(1) + 1;
+		results.close();
+
+		// Add the contacts to the unified contacts table if the database has been migrated
+		boolean unified = UnifiedContacts.hasContactsTable(connection);
+
+		connection.setAutoCommit(false);
+		try {
+			for (int start = 0; start < count; start += BATCH_SIZE) {
+				int end = Math.min(count, start + BATCH_SIZE);
+				ArrayList<String> sites = new ArrayList<>(), customers = new ArrayList<>(),
+						contractors = new ArrayList<>(), architects = new ArrayList<>(), projects = new ArrayList<>();
+				for (int i = start; i < end; i++) {
+					int projectNum = firstProject + i;
+					int erfNum = firstErf + i;
+					String buildType = pick(BUILD_TYPES);
+					String address = address();
+
+					String firstName = pick(FIRST_NAMES);
+					String lastName = pick(LAST_NAMES);
+					// The project number keeps the contact names unique
+					String customer = firstName + " " + lastName + " " + projectNum;
+					String contractorLastName = pick(LAST_NAMES);
+					String contractor = contractorLastName + " " + pick(COMPANY_TYPES) + " " + projectNum;
+					String architectLastName = pick(LAST_NAMES);
+					String architect = architectLastName + " " + pick(ARCHITECT_TYPES) + " " + projectNum;
+
+					// Fees are mostly small, with a few large projects
+					double totalFee = (double) Math.round(50000 * Math.exp(random.nextDouble() * 4.6));
+					LocalDate deadline = baseDate.plusDays(random.nextInt(900) - 180);
+					boolean finalised = random.nextInt(10) < 3;
+					double totalPaid = finalised ? totalFee : Math.round(totalFee * random.nextDouble() * 100) / 100.0;
+					String projectName = buildType + " " + lastName + " " + projectNum;
+					String completionDate = "NULL";
+					if (finalised) {
+						projectName += " (Finalised)";
+						completionDate = "'" + deadline.minusDays(random.nextInt(60)).toString() + "'";
+					}
+
+					sites.add("INSERT INTO sites VALUES('" + erfNum + "','" + address + "')");
+					customers.add(insertContact(unified, "Customer", customer, phone(),
+							email(firstName + "." + lastName, "mail.co.za"), address()));
+					contractors.add(insertContact(unified, "Contractor", contractor, phone(),
+							email("info", contractorLastName + "-build.co.za"), address()));
+					architects.add(insertContact(unified, "Architect", architect, phone(),
+							email("studio", architectLastName + "-arch.co.za"), address()));
+					projects.add("INSERT INTO projects VALUES('" + projectNum + "','" + projectName + "','"
+							+ buildType + "','" + erfNum + "','" + totalFee + "','" + totalPaid + "','" + deadline
+							+ "','" + customer + "','" + contractor + "','" + architect + "','"
+							+ pick(projectManagers) + "', " + completionDate + ")");
+				}
+				// Projects must be added last, due to foreign keys
+				for (List<String> inserts : Arrays.asList(sites, customers, contractors, architects, projects)) {
+					for (String insert : inserts) {
+						statement.addBatch(insert);
+					}
+					statement.executeBatch();
+				}
+				connection.commit();
+				System.out.print("\r" + end + " of " + count + " projects added");
+			}
+			System.out.println();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(true);
+		}
+		return count;
+	}
+
+	/**
+	 * Builds the INSERT statement for a contact, into the unified contacts table or the table for the role.
+	 */
+	private static String insertContact(boolean unified, String role, String name, String phone, String email, String address) {
+		if (unified) {
+			return UnifiedContacts.insert(new ProjectContact(role, name, phone, email, address));
+		}
+		return "INSERT INTO " + role.toLowerCase() + "s VALUES('" + name + "','" + phone + "','" + email + "','" + address + "')";
+	}
+
+	private String pick(String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	private String address() {
+		return (1 + random.nextInt(250)) + " " + pick(STREETS) + ", " + pick(SUBURBS);
+	}
+
+	private String phone() {
+		return String.format("0%d%08d", 6 + random.nextInt(3), random.nextInt(100000000));
+	}
+
+	private static String email(String name, String domain) {
+		return (name + "@" + domain).toLowerCase().replace(" ", "");
+	}
+
+	/**
+	 * Generates test data from the command line.
+	 * <p>
+	 * Arguments: --projects=count (default 10000), --seed=seed (default 42), --base-date=date
+	 * (yyyy-mm-dd, default today), --url=JDBC URL (default the poisePMS database), --create-tables to create the tables first and
+	 * --create-procedures to create the add_project stored procedure.
+	 * @param args The command line arguments.
+	 */
+	public static void main(String[] args) {
+		String count = Poise.getOption(args, "--projects");
+		String seed = Poise.getOption(args, "--seed");
+		String baseDate = Poise.getOption(args, "--base-date");
+		String url = Poise.getOption(args, "--url");
+		Connection connection = (url == null) ? Poise.connectToDatabase() : Poise.connectToDatabase(url);
+		if (connection == null) {
+			return;
+		}
+		try (Statement statement = connection.createStatement()) {
+			if (Poise.hasOption(args, "--create-tables")) {
+				createTables(statement);
+			}
+			if (Poise.hasOption(args, "--create-procedures")) {
+				createProcedures(statement);
+			}
+			long start = System.nanoTime();
+			int added = new DataGenerator((seed == null) ? 42 : Long.parseLong(seed),
+					(baseDate == null) ? LocalDate.now() : LocalDate.parse(baseDate))
+					.generate(connection, statement, (count == null) ? 10000 : Integer.parseInt(count));
+			System.out.println(added + " projects added in " + ((System.nanoTime() - start) / 1000000) + " ms.");
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
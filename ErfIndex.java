@@ -0,0 +1,185 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Class to create an ERF Index object.
+ * <p>
+ * The ERF index holds the ERF number of every site in a sorted int array, so that checking if
+ * an ERF number exists, finding the ERF numbers in a range and finding the nearest ERF number
+ * are binary searches. The projects that are loaded are also kept by ERF number, so the projects
+ * in a range can be found without searching the projects list.
+ * <p>
+ * New sites are added when a project is added.
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ErfIndex implements ProjectListener {
+
+	// ATTRIBUTES
+	private int[] erfNumbers = new int[256];
+	private int size = 0;
+	private final HashMap<Integer, ArrayList<Project>> projectsByErf = new HashMap<>();
+
+	/**
+	 * Adds the ERF numbers of all sites in a database.
+	 * <p>
+	 * Can be called once for each shard database.
+	 * @param statement The line to the database for running queries.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public synchronized void load(Statement statement) throws SQLException {
+		ResultSet results = statement.executeQuery("SELECT ERFNUM FROM sites");
+		while (results.next()) {
+			if (size == erfNumbers.length) {
+				erfNumbers = Arrays.copyOf(erfNumbers, size * 2);
+			}
+			erfNumbers[size] = results.getInt(1);
+			size += 1;
+		}
+		results.close();
+
+		// Sort, and remove ERF numbers repeated across shards
+		Arrays.sort(erfNumbers, 0, size);
+		int distinct = 0;
+		for (int i = 0; i < size; i++) {
+			if (distinct == 0 || erfNumbers[i] != erfNumbers[distinct - 1]) {
+				erfNumbers[distinct] = erfNumbers[i];
+				distinct += 1;
+			}
+		}
+		size = distinct;
+	}
+
+	/**
+	 * Adds the project objects in a list, e.g. when all projects are loaded.
+	 * @param projects The list of project objects.
+	 */
+	public synchronized void addAll(List<Project> projects) {
+		for (Project project : projects) {
+			projectAdded(project);
+		}
+	}
+
+	/**
+	 * Checks if a site with the ERF number exists.
+	 * @param erfNumber The ERF number.
+	 * @return True if the ERF number is in the index.
+	 */
+	public synchronized boolean contains(int erfNumber) {
+		return Arrays.binarySearch(erfNumbers, 0, size, erfNumber) >= 0;
+	}
+
+	/**
+	 * Gets the ERF numbers in a range.
+	 * @param from The lowest ERF number (inclusive).
+	 * @param to The highest ERF number (inclusive).
+	 * @return The ERF numbers in the range, in order.
+	 */
+	public synchronized int[] getRange(int from, int to) {
+		if (from > to) {
+			return new int[0];
+		}
+		int start = insertionPoint(from);
+		int end = insertionPoint(to);
+		if (end < size && erfNumbers[end] == to) {
+			end += 1;
+		}
+		return Arrays.copyOfRange(erfNumbers, start, end);
+	}
+
+	/**
+	 * Gets the ERF number closest to a number.
+	 * @param erfNumber The number to search from.
+	 * @return The closest ERF number (the lower one if two are equally close), or -1 if there are no sites.
+	 */
+	public synchronized int getNearest(int erfNumber) {
+		if (size == 0) {
+			return -1;
+		}
+		int position = insertionPoint(erfNumber);
+		if (position == size) {
+			return erfNumbers[size - 1];
+		}
+		if (position == 0 || erfNumbers[position] == erfNumber) {
+			return erfNumbers[position];
+		}
+		int lower = erfNumbers[position - 1];
+		int higher = erfNumbers[position];
+		return ((long) erfNumber - lower <= (long) higher - erfNumber) ? lower : higher;
+	}
+
+	/**
+	 * Gets the loaded projects on the sites in a range.
+	 * @param from The lowest ERF number (inclusive).
+	 * @param to The highest ERF number (inclusive).
+	 * @return The list of project objects, in ERF number order.
+	 */
+	public synchronized ArrayList<Project> getProjects(int from, int to) {
+		ArrayList<Project> matches = new ArrayList<>();
+		for (int erfNumber : getRange(from, to)) {
+			ArrayList<Project> projects = projectsByErf.get(erfNumber);
+			if (projects != null) {
+				matches.addAll(projects);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Gets the number of sites in the index.
+	 * @return The number of ERF numbers.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public synchronized void projectAdded(Project project) {
+		int erfNumber = project.getERFNum();
+		int position = Arrays.binarySearch(erfNumbers, 0, size, erfNumber);
+		if (position < 0) {
+			position = -position - 1;
+			if (size == erfNumbers.length) {
+				erfNumbers = Arrays.copyOf(erfNumbers, size * 2);
+			}
+			System.arraycopy(erfNumbers, position, erfNumbers, position + 1, size - position);
+			erfNumbers[position] = erfNumber;
+			size += 1;
+		}
+		projectsByErf.computeIfAbsent(erfNumber, key -> new ArrayList<>(1)).add(project);
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		// Deadlines are not indexed
+	}
+
+	@Override
+	public void paymentAdded(Project project, double payment) {
+		// Payments are not indexed
+	}
+
+	@Override
+	public void contractorReplaced(Project project, ProjectContact oldContractor) {
+		// Contractors are not indexed
+	}
+
+	@Override
+	public void projectFinalised(Project project, String oldProjectName) {
+		// Sites do not change when a project is finalised
+	}
+
+	/**
+	 * Gets the position of the first ERF number that is not less than a number.
+	 */
+	private int insertionPoint(int erfNumber) {
+		int position = Arrays.binarySearch(erfNumbers, 0, size, erfNumber);
+		return (position >= 0) ? position : -position - 1;
+	}
+}
@@ -0,0 +1,124 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class to create a Parallel Project Loader object.
+ * <p>
+ * The parallel project loader is used in place of Poise.getProjects to load all projects
+ * using several database connections at the same time. The range of project numbers is
+ * split into smaller ranges. Each worker thread opens its own connection, and repeatedly
+ * takes the next range, runs the project query for it and creates the project objects.
+ * The lists for each range are then joined in project number order.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class ParallelProjectLoader {
+
+	// Number of ranges for each worker, so workers that finish early can take more ranges
+	private static final int RANGES_PER_WORKER = 4;
+
+	// ATTRIBUTES
+	private final int workers;
+
+	/**
+	 * Parallel Project Loader constructor.
+	 * @param workers The number of worker threads and database connections to use.
+	 */
+	public ParallelProjectLoader(int workers) {
+		this.workers = workers;
+	}
+
+	/**
+	 * Loads all projects from the database.
+	 * @param statement The line to the database, used to find the range of project numbers.
+	 * @return The array list of all project objects, in project number order.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public ArrayList<Project> getProjects(Statement statement) throws SQLException {
+		// Find the range of project numbers
+		ResultSet results = statement.executeQuery("SELECT MIN(PROJECTNUM), MAX(PROJECTNUM) FROM projects");
+		results.next();
+		long min = results.getLong(1);
+		long max = results.getLong(2);
+		boolean empty = results.wasNull();
+		results.close();
+		if (empty) {
+			return new ArrayList<>();
+		}
+
+		// Split the project numbers into ranges of equal size
+		int rangeCount = (int) Math.max(1, Math.min(workers * RANGES_PER_WORKER, max - min + 1));
+		long[] starts = new long[rangeCount + 1];
+		for (int i = 0; i <= rangeCount; i++) {
+			starts[i] = min + (max - min + 1) * i / rangeCount;
+		}
+		// Each range is only set by the worker that loads it
+		List<ArrayList<Project>> rangeProjects = new ArrayList<>(Collections.nCopies(rangeCount, null));
+		AtomicInteger nextRange = new AtomicInteger();
+
+		// Each worker loads ranges on its own connection until there are none left
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		ArrayList<Future<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < workers; i++) {
+			futures.add(executor.submit(() -> {
+				Connection connection = Poise.connectToDatabase();
+				if (connection == null) {
+					throw new SQLException("The connection to the database failed.");
+				}
+				try (Statement workerStatement = connection.createStatement()) {
+					int range;
+					while ((range = nextRange.getAndIncrement()) < rangeCount) {
+						ArrayList<Project> projects = new ArrayList<>();
+						ResultSet rangeResults = workerStatement.executeQuery(Poise.getProjectQuery()
+								+ " WHERE projects.PROJECTNUM >= " + starts[range]
+								+ " AND projects.PROJECTNUM < " + starts[range + 1]
+								+ " ORDER BY projects.PROJECTNUM");
+						while (rangeResults.next()) {
+							projects.add(Poise.createProject(rangeResults));
+						}
+						rangeResults.close();
+						rangeProjects.set(range, projects);
+					}
+				} finally {
+					connection.close();
+				}
+				return null;
+			}));
+		}
+		executor.shutdown();
+
+		// Wait for the workers, and pass on the first error
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new SQLException("Loading the projects was interrupted.", e);
+			} catch (ExecutionException e) {
+				executor.shutdownNow();
+				if (e.getCause() instanceof SQLException) {
+					throw (SQLException) e.getCause();
+				}
+				throw new SQLException("Loading the projects failed.", e.getCause());
+			}
+		}
+
+		// Join the ranges in order
+		int total = 0;
+		for (ArrayList<Project> projects : rangeProjects) {
+			total += projects.size();
+		}
+		ArrayList<Project> allProjects = new ArrayList<>(total);
+		for (ArrayList<Project> projects : rangeProjects) {
+			allProjects.addAll(projects);
+		}
+		return allProjects;
+	}
+}
@@ -0,0 +1,461 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class to create a Payment Reconciler object.
+ * <p>
+ * The payment reconciler reads a bank statement one line at a time, matches each payment to a
+ * project and adds the matched payments to the projects' total paid. The statement can be a CSV
+ * file with the columns date, amount, reference and description, or an OFX file, where each
+ * transaction is a STMTTRN block with TRNAMT, NAME and MEMO values.
+ * <p>
+ * A payment is matched by a reference which is only a project number (e.g. "1042", "P1042" or
+ * "#1042"), by a project number with a prefix anywhere in the reference or description (e.g.
+ * "Invoice 77 PRJ1042"), or by a reference or description which is the name of a customer with
+ * only one open project. Other numbers, such as invoice numbers, years and account numbers, are
+ * never taken as project numbers. Payments with more than one project number, or with a reference
+ * and description that match different projects, are not posted.
+ * Matched payments are posted in groups, with each group committed as one transaction.
+ * Payments that cannot be matched are written to the unmatched items report, with the reason,
+ * the statement line number, and the reference and description from the statement.
+ * <p>
+ * Each posted statement line is recorded in the posted_payments table, in the same transaction as
+ * the payment, by a key made from the OFX FITID, or from the date, amount, reference, description
+ * and the number of identical lines before it in the file. Lines that have already been posted are
+ * skipped, so a statement can be reconciled again (e.g. after a failure) without posting payments twice.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class PaymentReconciler {
+
+	// A reference which is only a project number, with an optional prefix
+	private static final Pattern REFERENCE_NUMBER = Pattern.compile("(?i)(?:PRJ|PROJ|P|#)?\\s*(\\d+)");
+	// Project numbers anywhere in the text, which must have a prefix so dates, amounts and other numbers are not matched
+	private static final Pattern PREFIXED_NUMBER = Pattern.compile("(?i)(?:PRJ|PROJ|#)\\s*(\\d+)");
+	// OFX values, e.g. <TRNAMT>1500.00
+	private static final Pattern OFX_VALUE = Pattern.compile("<(\\w+)>([^<\\r\\n]*)");
+
+	/** The CREATE TABLE statement for the keys of the posted statement lines, which works in MySQL and in H2. */
+	static final String POSTED_PAYMENTS_TABLE = "CREATE TABLE IF NOT EXISTS posted_payments ("
+			+ "transactionKey CHAR(64) NOT NULL PRIMARY KEY, PROJECTNUM INT NOT NULL)";
+
+	/**
+	 * Class for a matched payment waiting to be committed, with the statement line it came from.
+	 */
+	private static class Payment {
+		final int lineNumber;
+		final String amountString, reference, description, key;
+		final Project project;
+		final double amount;
+
+		Payment(int lineNumber, String amountString, String reference, String description, String key, Project project, double amount) {
+			this.lineNumber = lineNumber;
+			this.amountString = amountString;
+			this.reference = reference;
+			this.description = description;
+			this.key = key;
+			this.project = project;
+			this.amount = amount;
+		}
+	}
+
+	// ATTRIBUTES
+	private final ArrayList<Project> projects;
+	private final Statement statement;
+	private final Connection connection;
+	private final int groupSize;
+	private final HashMap<String, ArrayList<Project>> customerIndex = new HashMap<>();
+	private final DecimalFormat decimalFormat = new DecimalFormat("#.00", DecimalFormatSymbols.getInstance(Locale.US));
+
+	// Payments waiting to be committed
+	private final ArrayList<Payment> group = new ArrayList<>();
+	// Number of times each line has been seen in the file, so identical lines get different keys
+	private final HashMap<String, Integer> lineCounts = new HashMap<>();
+	private int matched = 0, unmatched = 0, alreadyPosted = 0;
+	private double totalPosted = 0;
+	// Why the current line could not be matched, or null if it has not been rejected
+	private String reason = null;
+
+	/**
+	 * Payment Reconciler constructor.
+	 * <p>
+	 * Builds the index of customer names for the projects in the list. If the project cache is in
+	 * use, the list only holds some of the projects, so customers are looked up in the database instead.
+	 * @param projects The array list of project objects.
+	 * @param statement The line to the database to run updates.
+	 * @param connection The connection to the database used to control changes committed.
+	 * @param groupSize The maximum number of payments in one transaction.
+	 */
+	public PaymentReconciler(ArrayList<Project> projects, Statement statement, Connection connection, int groupSize) {
+		this.projects = projects;
+		this.statement = statement;
+		this.connection = connection;
+		this.groupSize = groupSize;
+		if (Poise.projectCache != null) {
+			return;
+		}
+		for (Project project : projects) {
+			customerIndex.computeIfAbsent(project.getCustomer().getContactName().toLowerCase(), name -> new ArrayList<>()).add(project);
+		}
+	}
+
+	/**
+	 * Reconciles the payments in the statement file.
+	 * @param statementFile The bank statement file (CSV or OFX).
+	 * @param reportFile The file for the unmatched items report.
+	 * @throws IOException If the files cannot be read or written.
+	 * @throws SQLException If the connection to the database fails.
+	 */
+	public void reconcile(Path statementFile, Path reportFile) throws IOException, SQLException {
+		long start = System.nanoTime();
+		statement.executeUpdate(POSTED_PAYMENTS_TABLE);
+		connection.setAutoCommit(false);
+		try (BufferedReader reader = Files.newBufferedReader(statementFile, StandardCharsets.UTF_8);
+				BufferedWriter report = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+			report.write("line,amount,reference,description,reason");
+			report.newLine();
+
+			int lineNumber = 0;
+			Boolean ofx = null;
+			HashMap<String, String> ofxValues = new HashMap<>();
+			int transactionLine = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber += 1;
+				String trimmed = line.trim();
+				if (trimmed.isEmpty()) {
+					continue;
+				}
+				// The first line decides whether the file is OFX or CSV
+				if (ofx == null) {
+					ofx = trimmed.startsWith("OFXHEADER") || trimmed.startsWith("<");
+				}
+				// OFX transactions are collected until the end of the block
+				if (trimmed.toUpperCase().startsWith("<STMTTRN>")) {
+					transactionLine = lineNumber;
+					ofxValues.clear();
+				}
+				if (ofx) {
+					Matcher matcher = OFX_VALUE.matcher(trimmed);
+					while (matcher.find()) {
+						ofxValues.put(matcher.group(1).toUpperCase(), matcher.group(2).trim());
+					}
+					if (trimmed.toUpperCase().contains("</STMTTRN>")) {
+						process(report, transactionLine, ofxValues.get("FITID"), ofxValues.getOrDefault("DTPOSTED", ""),
+								ofxValues.get("TRNAMT"), ofxValues.getOrDefault("NAME", ""), ofxValues.getOrDefault("MEMO", ""));
+					}
+					continue;
+				}
+				// CSV line: date, amount, reference, description
+				List<String> fields = splitCsv(trimmed);
+				if (lineNumber == 1 && fields.size() > 1 && fields.get(1).equalsIgnoreCase("amount")) {
+					continue;
+				}
+				process(report, lineNumber, null, fields.get(0), fields.size() > 1 ? fields.get(1) : null,
+						fields.size() > 2 ? fields.get(2) : "", fields.size() > 3 ? fields.get(3) : "");
+			}
+			commitGroup(report);
+		} finally {
+			connection.setAutoCommit(true);
+		}
+
+		// Print summary
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Reconciliation complete: " + matched + " payments posted (R "
+				+ decimalFormat.format(totalPosted) + "), " + alreadyPosted + " already posted, " + unmatched + " unmatched items.");
+		System.out.println("Time: " + String.format(Locale.US, "%.3f", seconds) + " s");
+		System.out.println("Unmatched items written to " + reportFile);
+	}
+
+	/**
+	 * Matches a statement line to a project, and adds matched payments to the group.
+	 */
+	private void process(BufferedWriter report, int lineNumber, String transactionId, String date, String amountString,
+			String reference, String description) throws IOException, SQLException {
+		double amount;
+		try {
+			amount = Double.parseDouble(amountString.replace(",", "").replace("R", "").trim());
+		} catch (NullPointerException | NumberFormatException e) {
+			writeUnmatched(report, lineNumber, amountString, reference, description, "Invalid amount");
+			return;
+		}
+		if (amount <= 0) {
+			writeUnmatched(report, lineNumber, amountString, reference, description, "Not a payment");
+			return;
+		}
+
+		reason = null;
+		Project referenceProject = match(reference, true);
+		Project descriptionProject = match(description, false);
+		if (referenceProject != null && descriptionProject != null
+				&& referenceProject.getProjectNum() != descriptionProject.getProjectNum()) {
+			reason = "Reference and description match different projects";
+		}
+		Project project = (referenceProject != null) ? referenceProject : descriptionProject;
+		if (reason != null || project == null) {
+			writeUnmatched(report, lineNumber, amountString, reference, description,
+					(reason != null) ? reason : "No matching project");
+			return;
+		}
+
+		group.add(new Payment(lineNumber, amountString, reference, description,
+				getKey(transactionId, date, amountString, reference, description), project, amount));
+		if (group.size() == groupSize) {
+			commitGroup(report);
+		}
+	}
+
+	/**
+	 * Builds the key of a statement line: a SHA-256 hash of the OFX FITID, or of the line's values
+	 * and the number of identical lines before it in the file.
+	 */
+	private String getKey(String transactionId, String date, String amountString, String reference, String description) {
+		String line = (transactionId != null && !transactionId.isEmpty()) ? "FITID\t" + transactionId
+				: date + "\t" + amountString + "\t" + reference + "\t" + description;
+		int count = lineCounts.merge(line, 1, Integer::sum);
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest((line + "\t" + count).getBytes(StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder();
+			for (byte value : hash) {
+				key.append(String.format("%02x", value));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Finds the project for a reference or description.
+	 * <p>
+	 * If the text has more than one project number, or is the name of a customer with several
+	 * open projects, the reason is set and no project is returned.
+	 * @param text The reference or description.
+	 * @param isReference True for a reference, which may be only a project number without a prefix.
+	 * @return The matched project, or null if there is no single match.
+	 */
+	private Project match(String text, boolean isReference) throws SQLException {
+		if (text == null || text.trim().isEmpty()) {
+			return null;
+		}
+		// Project numbers with a prefix, or a reference which is only a number
+		LinkedHashSet<String> numbers = new LinkedHashSet<>();
+		Matcher matcher = PREFIXED_NUMBER.matcher(text);
+		while (matcher.find()) {
+			numbers.add(matcher.group(1).replaceFirst("^0+(?=\\d)", ""));
+		}
+		Matcher whole = REFERENCE_NUMBER.matcher(text.trim());
+		if (isReference && whole.matches()) {
+			numbers.add(whole.group(1).replaceFirst("^0+(?=\\d)", ""));
+		}
+		if (numbers.size() > 1) {
+			reason = "More than one project number";
+			return null;
+		}
+		if (numbers.size() == 1) {
+			try {
+				Project project = Poise.findProject(projects, Integer.parseInt(numbers.iterator().next()));
+				if (project != null) {
+					return project;
+				}
+			} catch (NumberFormatException e) {
+				// Too long to be a project number
+			}
+		}
+		// Customer name, if the customer has only one open project (or only one project)
+		ArrayList<Project> customerProjects = getCustomerProjects(text.trim());
+		if (customerProjects.isEmpty()) {
+			return null;
+		}
+		Project openProject = null;
+		int openCount = 0;
+		for (Project project : customerProjects) {
+			if (!project.isFinalised()) {
+				openProject = project;
+				openCount += 1;
+			}
+		}
+		if (openCount == 1) {
+			return openProject;
+		}
+		if (customerProjects.size() == 1) {
+			return customerProjects.get(0);
+		}
+		reason = "Customer has more than one project";
+		return null;
+	}
+
+	/**
+	 * Gets the projects of a customer.
+	 * <p>
+	 * With the project cache, the customer's project numbers are read from the database, and
+	 * the projects are found through the cache. Otherwise the customer index is used.
+	 * @param customerName The customer name (not case sensitive).
+	 * @return The customer's projects, which may be empty.
+	 */
+	private ArrayList<Project> getCustomerProjects(String customerName) throws SQLException {
+		if (Poise.projectCache == null) {
+			return customerIndex.getOrDefault(customerName.toLowerCase(), new ArrayList<>());
+		}
+		ArrayList<Integer> projectNums = new ArrayList<>();
+		ResultSet results = statement.executeQuery("SELECT PROJECTNUM FROM projects WHERE customer = '"
+				+ customerName.replace("'", "''") + "'");
+		while (results.next()) {
+			projectNums.add(results.getInt(1));
+		}
+		results.close();
+		ArrayList<Project> customerProjects = new ArrayList<>();
+		for (int projectNum : projectNums) {
+			Project project = Poise.findProject(projects, projectNum);
+			if (project != null) {
+				customerProjects.add(project);
+			}
+		}
+		return customerProjects;
+	}
+
+	/**
+	 * Posts the group of payments in one transaction, with the keys of their statement lines, then
+	 * updates the project objects.
+	 * <p>
+	 * Payments whose lines have already been posted are skipped. If the transaction fails, it is
+	 * rolled back and the payments are written to the report with their statement lines.
+	 */
+	private void commitGroup(BufferedWriter report) throws IOException {
+		if (group.isEmpty()) {
+			return;
+		}
+		ArrayList<Payment> posting = new ArrayList<>();
+		try {
+			// Find the lines that were posted by an earlier run
+			StringBuilder keys = new StringBuilder();
+			for (Payment payment : group) {
+				keys.append((keys.length() == 0) ? "" : ", ").append("'").append(payment.key).append("'");
+			}
+			HashSet<String> postedKeys = new HashSet<>();
+			ResultSet results = statement.executeQuery("SELECT transactionKey FROM posted_payments WHERE transactionKey IN (" + keys + ")");
+			while (results.next()) {
+				postedKeys.add(results.getString(1));
+			}
+			results.close();
+
+			for (Payment payment : group) {
+				if (postedKeys.contains(payment.key)) {
+					alreadyPosted += 1;
+					continue;
+				}
+				posting.add(payment);
+				statement.addBatch("UPDATE projects SET totalPaid = totalPaid + '" + payment.amount
+						+ "' WHERE PROJECTNUM = '" + payment.project.getProjectNum() + "'");
+				statement.addBatch("INSERT INTO posted_payments VALUES('" + payment.key + "', '"
+						+ payment.project.getProjectNum() + "')");
+			}
+			if (!posting.isEmpty()) {
+				statement.executeBatch();
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			try {
+				connection.rollback();
+			} catch (SQLException rollbackError) {
+				rollbackError.printStackTrace();
+			}
+			for (Payment payment : group) {
+				writeUnmatched(report, payment.lineNumber, payment.amountString, payment.reference, payment.description,
+						"Database update failed (project " + payment.project.getProjectNum() + ")");
+			}
+			clearGroup();
+			return;
+		}
+
+		for (Payment payment : posting) {
+			Project project = payment.project;
+			project.setTotalPaid(project.getTotalPaid() + payment.amount);
+			for (ProjectListener listener : Poise.projectListeners) {
+				listener.paymentAdded(project, payment.amount);
+			}
+			matched += 1;
+			totalPosted += payment.amount;
+		}
+		clearGroup();
+	}
+
+	private void clearGroup() {
+		try {
+			statement.clearBatch();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		group.clear();
+	}
+
+	/**
+	 * Writes an unmatched item to the report as a CSV line.
+	 */
+	private void writeUnmatched(BufferedWriter report, int lineNumber, String amount, String reference, String description, String reason) throws IOException {
+		report.write(lineNumber + "," + csvValue(amount) + "," + csvValue(reference) + ","
+				+ csvValue(description) + "," + csvValue(reason));
+		report.newLine();
+		unmatched += 1;
+	}
+
+	private static String csvValue(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.contains(",") || value.contains("\"")) {
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+		return value;
+	}
+
+	/**
+	 * Splits a CSV line into fields, allowing quoted fields.
+	 */
+	static List<String> splitCsv(String line) {
+		ArrayList<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char character = line.charAt(i);
+			if (quoted) {
+				if (character == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i += 1;
+				}
+				else if (character == '"') {
+					quoted = false;
+				}
+				else {
+					field.append(character);
+				}
+			}
+			else if (character == '"') {
+				quoted = true;
+			}
+			else if (character == ',') {
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			}
+			else {
+				field.append(character);
+			}
+		}
+		fields.add(field.toString().trim());
+		return fields;
+	}
+}
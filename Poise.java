@@ -1,4 +1,6 @@
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -26,6 +28,69 @@ import java.util.*;
  */
 public class Poise {
 
+	/* Bounded cache used in place of the full projects list when the program is run
+	 * with the --cache=<size> argument. Null when all projects are loaded.*/
+	static ProjectCache projectCache = null;
+	
+	/* Contact details cache used when the program is run with the --lazy-contacts argument, or
+	 * when the database has the unified contacts table. Null when contact details are loaded with the projects.*/
+	static ContactCache contactCache = null;
+	
+	/* Shard databases used when the program is run with the --shards argument.
+	 * Null when all projects are in one database.*/
+	static ProjectShards projectShards = null;
+	
+	/* Journal of project changes used when the program is run with the --journal argument.
+	 * Null when changes are not journalled.*/
+	static ProjectJournal projectJournal = null;
+	
+	/* Read replicas used for viewing queries when the program is run with the --replicas argument.
+	 * Null when all queries use the primary database.*/
+	static ReadReplicas readReplicas = null;
+	
+	// True if new projects are added with one call to the add_project stored procedure
+	static boolean addProjectProcedure = false;
+	
+	// True if the contacts are in the unified contacts table instead of the customers, contractors and architects tables
+	static boolean unifiedContacts = false;
+	
+	/* Stream of project changes for other systems, used when the program is run with the --changes argument.
+	 * Null when changes are not published.*/
+	static ChangeStream changeStream = null;
+	
+	// Objects which are told about each change to a project
+	static ArrayList<ProjectListener> projectListeners = new ArrayList<>();
+	
+	// Running totals of fees, payments and project counts for the dashboard
+	static ReceivablesLedger receivablesLedger = new ReceivablesLedger();
+	
+	// Index of the loaded projects by project manager, contractor, architect and customer name
+	static ProjectIndex projectIndex = new ProjectIndex();
+	
+	// Sorted index of site ERF numbers, used for range searches and duplicate checks
+	static ErfIndex erfIndex = new ErfIndex();
+	
+	// Names in the contact tables, used to reject duplicate contacts before any SQL is sent
+	static ContactNameFilter contactNames = new ContactNameFilter();
+	
+	/* Printed text of the incomplete and overdue views, used when all projects are loaded.
+	 * Null when the views are read from the database.*/
+	static ViewCache viewCache = null;
+	
+	/* Published versions of all projects, which readers use without locking. Used when the program
+	 * is run with the --snapshots argument and all projects are loaded. Null otherwise.*/
+	static ProjectSnapshots projectSnapshots = null;
+	
+	// True if the program is run with the --snapshots argument
+	static boolean keepSnapshots = false;
+	
+	/* Archive of finalised projects used when the program is run with the --archive argument.
+	 * Null when finalised projects are loaded with the open projects.*/
+	static ProjectArchive projectArchive = null;
+	
+	// Connects and loads the projects in the background while the menu is in use
+	static StartupLoader startupLoader = null;
+
 	/**
 	 * Imports a list of project objects for editing and recording/creating new project objects.
 	 * <p>
@@ -37,6 +102,61 @@ public class Poise {
 	 * view incomplete projects and view overdue projects. The edit menu allows a user to change
 	 * the project deadline, add a payment to the total amount paid, edit the contractor details, 
 	 * or finalise a project in the poisePMS database
+	 * <p>
+	 * If the program is run with the argument --cache=size, projects are not all loaded at startup.
+	 * Only up to the given number of projects are held in a project cache, and the rest are read
+	 * from the database when they are selected.
+	 * <p>
+	 * If the program is run with the argument --lazy-contacts, projects are loaded without the
+	 * customer, contractor and architect details. The details are read when a project is printed,
+	 * invoiced or edited.
+	 * <p>
+	 * If the database has been migrated to the unified contacts table (java UnifiedContacts), the
+	 * contact details are read when needed as with --lazy-contacts (except with --off-heap, where
+	 * they are loaded with the projects), and the contacts of a list of projects are read with one
+	 * query, whatever their roles.
+	 * <p>
+	 * If the program is run with the argument --shards=url1,url2,..., projects are split across the
+	 * shard databases by project number. Each project is read and updated in the shard that owns it,
+	 * and the views query all shards. The cache and lazy contact options only apply to one database.
+	 * <p>
+	 * If the program is run with the argument --journal=directory, every change is written to a
+	 * journal in the directory. When all projects are loaded, they are rebuilt from the journal
+	 * snapshot and events instead of being read from the database, unless the database has been
+	 * changed without the journal.
+	 * <p>
+	 * If the program is run with the argument --replicas=url1,url2,..., the views read from the
+	 * database and exports use the replica databases in turn. Updates, and the projects that are
+	 * loaded for editing, use the primary database. For --replica-lag=milliseconds (default 5000) after each change, reads
+	 * use the primary database, so the change is always seen.
+	 * <p>
+	 * If the program is run with the argument --changes=directory, every change is published as a
+	 * JSON line, with the values before and after the change, to segment files in the directory.
+	 * Other systems can follow the changes by offset.
+	 * <p>
+	 * If the program is run with the argument --batch=file, the commands in the file are run instead
+	 * of the menus, and the results are written to the file given by --output=file.
+	 * <p>
+	 * If the program is run with the argument --archive=directory, finalised projects are kept in a
+	 * compressed archive in the directory, and only the open projects are loaded. Archived projects
+	 * are read from the archive when they are selected.
+	 * <p>
+	 * If the program is run with the argument --off-heap, the project names, addresses and contact
+	 * details are stored UTF-8 encoded outside the Java heap, and decoded when they are read. It is
+	 * only used when all projects are loaded with their contact details, so it cannot be combined
+	 * with --cache, --shards, --archive or --lazy-contacts.
+	 * <p>
+	 * If the program is run with the argument --snapshots, and all projects are loaded, a copy of
+	 * each project is published in a project snapshot after each change, so other threads can read
+	 * a consistent view of the projects without locking. A project selected by number is then read
+	 * from the latest snapshot.
+	 * <p>
+	 * If the program is run with the argument --parallel=workers, all projects are loaded by the
+	 * given number of worker threads, each with its own database connection.
+	 * <p>
+	 * The database connection and the projects are loaded in the background, so the main menu is
+	 * shown straight away. A new project can be added once the connection is open; the other menu
+	 * options wait for the projects to be loaded, printing the progress.
 	 * 
 	 * @param args The command line arguments
 	 */
@@ -47,23 +167,63 @@ public class Poise {
 		// Introductory message
 		System.out.println("Welcome to the Poise Project Manager!");
 
-		// Connect to database
-		Connection connection = connectToDatabase();
+		keepSnapshots = hasOption(args, "--snapshots");
 
-		try {
-			/* Direct line to poisePMS database to run queries
-			 * and execute updates*/
-			Statement statement = connection.createStatement();
+		/* Keep the project text off the heap if required (before any project is created). Arena records
+		 * are never reclaimed, so the arena is only used when each project is created once.*/
+		if (hasOption(args, "--off-heap")) {
+			if (getOption(args, "--cache") != null || getOption(args, "--shards") != null
+					|| getOption(args, "--archive") != null || hasOption(args, "--lazy-contacts")) {
+				System.out.println("Error! --off-heap cannot be used with --cache, --shards, --archive or --lazy-contacts,"
+						+ " which create project objects each time projects are viewed. The text is kept on the heap.");
+			}
+			else {
+				Project.textArena = new TextArena();
+			}
+		}
+
+		// Connect and load the projects in the background, so the menu is shown straight away
+		startupLoader = new StartupLoader(args);
+		Connection connection = null;
+		Statement statement = null;
 
+		try {
 			// Projects list for viewing project data
-			ArrayList<Project> projects = getProjects(statement);
+			ArrayList<Project> projects = new ArrayList<>();
+			
+			// Run the command file instead of the menus if required
+			String batchFile = getOption(args, "--batch");
+			if (batchFile != null) {
+				connection = startupLoader.getConnection();
+				statement = startupLoader.getStatement();
+				if (startupLoader.mergeProjects(projects)) {
+					initialiseProjects(projects, statement);
+				}
+				if (projectShards != null) {
+					System.out.println("Error! Batch commands cannot be run on shards.");
+				}
+				else {
+					String outputFile = getOption(args, "--output");
+					BatchRunner batchRunner = new BatchRunner(projects, statement, connection, 500);
+					batchRunner.run(Paths.get(batchFile), Paths.get(outputFile != null ? outputFile : "batch-results.txt"));
+				}
+			}
 
-			// Initiate value for main menu
-			int mainChoice = 0;
+			// Initiate value for main menu (the menu is skipped in batch mode)
+			int mainChoice = (batchFile != null) ? 6 : -1;
 
 			while(mainChoice != 6) {
 				displayMainMenu();
 				mainChoice = getMenuChoice(userInput, mainChoice);
+				
+				// Wait for the connection, and for the projects unless a new project is being added (or on exit)
+				if (connection == null) {
+					connection = startupLoader.getConnection();
+					statement = startupLoader.getStatement();
+				}
+				if (mainChoice > 1 && mainChoice != 6 && startupLoader.mergeProjects(projects)) {
+					initialiseProjects(projects, statement);
+				}
 
 				switch(mainChoice) {
 				// Main menu options:
@@ -88,16 +248,16 @@ public class Poise {
 
 						switch(editChoice) {
 						case 1:
-							updateDeadline(project, userInput, statement);
+							updateDeadline(project, userInput, getStatement(project, statement));
 							break;
 						case 2:
-							updatePaid(project, userInput, statement);
+							updatePaid(project, userInput, getStatement(project, statement));
 							break;
 						case 3:
-							updateContractor(project, userInput, statement, connection);
+							updateContractor(project, userInput, getStatement(project, statement), getConnection(project, connection));
 							break;
 						case 4:
-							finaliseProject(project, statement);
+							finaliseProject(project, getStatement(project, statement));
 							break;
 						case 5:
 							// Exits edit menu
@@ -113,42 +273,284 @@ public class Poise {
 					break;
 				case 4:
 					// View all projects with no completion date value
-					printIncompleteProjects(projects);
+					printIncompleteProjects(getViewProjects(projects, INCOMPLETE_CONDITION));
 					break;
 				case 5:
 					// View all projects whose deadline is in the past
-					printOverdueProjects(projects);
+					printOverdueProjects(getViewProjects(projects, OVERDUE_CONDITION));
 					break;
 				case 6:
-					System.out.println("Exit program.");
+					// Exit
+					break;
+				case 7:
+					// View the journalled changes to a project
+					printProjectHistory(userInput);
+					break;
+				case 8:
+					// Write all projects to a CSV or JSON-lines file
+					exportProjects(userInput, connection);
+					break;
+				case 9:
+					// Replace the contractor on every open project matching a filter
+					bulkReassignContractor(userInput, projects, statement, connection);
+					break;
+				case 10:
+					// Post the payments in a bank statement file
+					reconcilePayments(userInput, projects, statement, connection);
+					break;
+				case 11:
+					// View the receivables totals
+					printDashboard(userInput);
+					break;
+				case 12:
+					// View the projects for a project manager, contractor, architect or customer
+					printProjectsByPerson(projects, userInput, statement);
+					break;
+				case 13:
+					// View the projects on a range of ERF numbers
+					printProjectsByErf(projects, userInput, statement);
+					break;
+				case 14:
+					// Run a query written by the user
+					queryProjects(projects, userInput, statement);
 					break;
 				default:
 					System.out.println("Error! Please enter a valid menu option.");
 				}
 			}
-			// Close connections
-			userInput.close();
-			connection.close();
-			statement.close();
+			System.out.println("Exit program.");
+			
+			// Print cache statistics
+			if (projectCache != null) {
+				System.out.println(projectCache);
+			}
+			System.out.println(contactNames);
+			if (viewCache != null) {
+				System.out.println(viewCache);
+			}
+			if (Project.textArena != null) {
+				System.out.println(Project.textArena);
+			}
+			
+			if (readReplicas != null) {
+				System.out.println(readReplicas);
+			}
 
-		} catch (SQLException e) {
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
+		} finally {
+			// Close connections and files, also after an error, so waiting changes are written
+			userInput.close();
+			closeAll(connection, statement);
+		}
+	}
+	
+	/**
+	 * Closes the database connections, shards, replicas, journal, archive and change stream that are open.
+	 * <p>
+	 * Each is closed even if closing another one fails.
+	 * <p>
+	 * @param connection The connection to the database, or null if it was not opened.
+	 * @param statement The line to the database, or null if it was not opened.
+	 */
+	static void closeAll(Connection connection, Statement statement) {
+		for (AutoCloseable closeable : Arrays.asList(changeStream, projectJournal, projectArchive, projectShards,
+				readReplicas, statement, connection)) {
+			try {
+				if (closeable != null) {
+					closeable.close();
+				}
+			} catch (Exception e) {
+				System.out.println("Error! " + closeable.getClass().getSimpleName() + " could not be closed.");
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Sets up the objects that use the full projects list, once the projects have been loaded.
+	 * <p>
+	 * The journal starts tracking the projects, the dashboard totals and project indexes are
+	 * built, and the objects are added to the project listeners. This is done on the main thread,
+	 * after any projects added while loading have been merged into the list.
+	 * <p>
+	 * @param projects The array list of all loaded project objects.
+	 * @param statement The line to the database for running queries.
+	 * @throws SQLException If a database error occurs.
+	 * @throws IOException If the journal snapshot cannot be written.
+	 */
+	static void initialiseProjects(ArrayList<Project> projects, Statement statement) throws SQLException, IOException {
+		if (projectJournal != null && projectShards == null && projectCache == null) {
+			projectJournal.track(projects);
+		}
+
+		// Build the dashboard totals from the loaded projects, or from the database
+		if (projectShards != null) {
+			for (Connection shardConnection : projectShards.getConnections()) {
+				Statement shardStatement = shardConnection.createStatement();
+				receivablesLedger.load(shardStatement);
+				shardStatement.close();
+			}
+		}
+		else if (projectCache != null || projectArchive != null) {
+			receivablesLedger.load(statement);
+		}
+		else {
+			receivablesLedger.addAll(projects);
+		}
+		projectListeners.add(receivablesLedger);
+		
+		// Keep the cached projects under their current names
+		if (projectCache != null) {
+			projectListeners.add(projectCache);
+		}
+		
+		// Index the loaded projects by person (projects that are not loaded are found with a query)
+		projectIndex.addAll(projects);
+		projectListeners.add(projectIndex);
+		
+		// Index the loaded projects by site
+		erfIndex.addAll(projects);
+		projectListeners.add(erfIndex);
+		
+		// Keep the printed views of the loaded projects
+		if (projectShards == null && projectCache == null) {
+			viewCache = new ViewCache(projects);
+			projectListeners.add(viewCache);
+		}
+		
+		// Publish copies of the loaded projects for readers on other threads if required
+		if (keepSnapshots && projectShards == null && projectCache == null) {
+			projectSnapshots = new ProjectSnapshots(projects);
+			projectListeners.add(projectSnapshots);
+		}
+	}
+	
+	/**
+	 * Exports all projects to a CSV or JSON-lines file.
+	 * <p>
+	 * The user selects the format, the file name and whether the file is compressed with gzip.
+	 * The projects are streamed from the database (or from each shard) straight to the file,
+	 * so the projects list is not used.
+	 * <p>
+	 * @param userInput The Scanner used to get the export options from the user.
+	 * @param connection The connection to the database.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public static void exportProjects(Scanner userInput, Connection connection) throws SQLException {
+		// Heading
+		System.out.println();
+		System.out.println("\t***Export Projects***\t");
+		System.out.println();
+		
+		String format = "";
+		while(!format.equals("csv") && !format.equals("json")) {
+			System.out.print("Format (csv/json): ");
+			format = userInput.nextLine().trim().toLowerCase();
+		}
+		System.out.print("Compress with gzip (y/n): ");
+		boolean gzip = userInput.nextLine().trim().equalsIgnoreCase("y");
+		
+		String defaultFile = "projects." + (format.equals("json") ? "jsonl" : "csv") + (gzip ? ".gz" : "");
+		System.out.print("File name (" + defaultFile + "): ");
+		String fileName = userInput.nextLine().trim();
+		if (fileName.equals("")) {
+			fileName = defaultFile;
+		}
+		
+		List<Connection> connections = (projectShards != null) ? projectShards.getConnections() : Arrays.asList(getReadConnection(connection));
+		ProjectExporter exporter = new ProjectExporter(format.equals("json"), gzip);
+		try {
+			long start = System.nanoTime();
+			long count = exporter.export(connections, Paths.get(fileName));
+			System.out.println(count + " projects exported to " + fileName + " in "
+					+ ((System.nanoTime() - start) / 1000000) + " ms.");
+		} catch (IOException e) {
+			System.out.println("Error! The file could not be written.");
 		}
 	}
 
 	
 	// METHODS  ---------------------------->
+	
+	/**
+	 * Gets the value of a command line argument in the format name=value.
+	 * <p>
+	 * @param args The command line arguments.
+	 * @param name The argument name, e.g. "--cache".
+	 * @return The argument value, or null if the argument was not given.
+	 */
+	static String getOption(String[] args, String name) {
+		for (String arg : args) {
+			if (arg.startsWith(name + "=")) {
+				return arg.substring(name.length() + 1);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Checks if a command line argument without a value was given.
+	 * <p>
+	 * @param args The command line arguments.
+	 * @param name The argument name, e.g. "--lazy-contacts".
+	 * @return True if the argument was given.
+	 */
+	static boolean hasOption(String[] args, String name) {
+		return Arrays.asList(args).contains(name);
+	}
 		
+	/**
+	 * Gets the line for a query that only reads projects for viewing.
+	 * <p>
+	 * @param statement The line to the primary database.
+	 * @return The statement for a read replica if replicas are in use and there has not been a recent change,
+	 * otherwise the primary statement.
+	 */
+	static Statement getReadStatement(Statement statement) {
+		if (readReplicas != null) {
+			return readReplicas.getStatement(statement);
+		}
+		return statement;
+	}
+	
+	/**
+	 * Gets the connection for queries that only read projects for viewing.
+	 * <p>
+	 * @param connection The connection to the primary database.
+	 * @return The connection to a read replica if replicas are in use and there has not been a recent change,
+	 * otherwise the primary connection.
+	 */
+	static Connection getReadConnection(Connection connection) {
+		if (readReplicas != null) {
+			return readReplicas.getConnection(connection);
+		}
+		return connection;
+	}
+
+	
 	/**
 	 * Makes connection to the poisePMS database.
 	 * <p>
 	 * @return the connection to poisePMS
 	 */
 	public static Connection connectToDatabase() {
+		return connectToDatabase("jdbc:mysql://localhost:3306/poisepms?useSSL=false");
+	}
+	
+	/**
+	 * Makes connection to a poisePMS database at the given URL.
+	 * <p>
+	 * Used to connect to databases other than the default, e.g. shard databases.
+	 * <p>
+	 * @param url The JDBC URL of the database.
+	 * @return the connection to the database, or null if the connection failed.
+	 */
+	public static Connection connectToDatabase(String url) {
 		Connection connection = null;
 		try {
 			connection = DriverManager.getConnection(
-					"jdbc:mysql://localhost:3306/poisepms?useSSL=false",
+					url,
 					"otheruser",
 					"swordfish");
 		} catch (SQLException e) {
@@ -158,6 +560,71 @@ public class Poise {
 		return connection;
 	}	
 	
+	/**
+	 * The query used to access all project data in one query.
+	 * <p>
+	 * The values are contained in 5 tables - projects, sites, customers, contractors
+	 * and architects - which are combined using INNER JOIN. A WHERE clause can be 
+	 * appended to limit the projects returned.
+	 */
+	static final String PROJECT_QUERY = "SELECT projects.PROJECTNUM, projects.projectName, "
+			+ "projects.BUILDTYPE, projects.ERFNUM, sites.Address, projects.TOTALFEE, "
+			+ "projects.totalpaid, projects.deadline, projects.customer, customers.Telephone, "
+			+ "customers.Email, customers.Address, projects.contractor, contractors.Telephone, "
+			+ "contractors.Email, contractors.Address, projects.architect, architects.Telephone,"
+			+ "architects.Email, architects.Address, projects.projectManager, projects.completionDate "
+			+ "FROM ((((projects JOIN sites on projects.ERFNUM = sites.ERFNUM) "
+			+ "INNER JOIN customers on projects.customer = customers.customer) "
+			+ "INNER JOIN contractors on projects.contractor = contractors.contractor)"
+			+ "INNER JOIN architects on projects.architect = architects.architect)";
+	
+	/**
+	 * The query used to access all project data in one query, when the contacts are in the unified contacts table.
+	 * <p>
+	 * The contacts table is joined once for each role, on the contact name index. The joins are named
+	 * after the old tables, so the columns have the same labels as in PROJECT_QUERY.
+	 */
+	static final String UNIFIED_PROJECT_QUERY = "SELECT projects.PROJECTNUM, projects.projectName, "
+			+ "projects.BUILDTYPE, projects.ERFNUM, sites.Address, projects.TOTALFEE, "
+			+ "projects.totalpaid, projects.deadline, projects.customer, customers.Telephone, "
+			+ "customers.Email, customers.Address, projects.contractor, contractors.Telephone, "
+			+ "contractors.Email, contractors.Address, projects.architect, architects.Telephone,"
+			+ "architects.Email, architects.Address, projects.projectManager, projects.completionDate "
+			+ "FROM ((((projects JOIN sites on projects.ERFNUM = sites.ERFNUM) "
+			+ "INNER JOIN contacts customers on projects.customer = customers.contactName) "
+			+ "INNER JOIN contacts contractors on projects.contractor = contractors.contactName)"
+			+ "INNER JOIN contacts architects on projects.architect = architects.contactName)";
+	
+	/**
+	 * The query used to access project data without the contact details.
+	 * <p>
+	 * Only the projects and sites tables are joined. The contact names are read from the
+	 * projects table, and the contact details are loaded later by the contact cache.
+	 */
+	static final String LAZY_PROJECT_QUERY = "SELECT projects.PROJECTNUM, projects.projectName, "
+			+ "projects.BUILDTYPE, projects.ERFNUM, sites.Address, projects.TOTALFEE, "
+			+ "projects.totalpaid, projects.deadline, projects.customer, projects.contractor, "
+			+ "projects.architect, projects.projectManager, projects.completionDate "
+			+ "FROM projects JOIN sites on projects.ERFNUM = sites.ERFNUM";
+	
+	/**
+	 * Gets the query used to load projects.
+	 * <p>
+	 * @return LAZY_PROJECT_QUERY if contact details are loaded on demand, otherwise the full project query.
+	 */
+	static String getProjectQuery() {
+		return (contactCache != null) ? LAZY_PROJECT_QUERY : getFullProjectQuery();
+	}
+	
+	/**
+	 * Gets the query used to load projects with their contact details.
+	 * <p>
+	 * @return UNIFIED_PROJECT_QUERY if the contacts are in the unified contacts table, otherwise PROJECT_QUERY.
+	 */
+	static String getFullProjectQuery() {
+		return unifiedContacts ? UNIFIED_PROJECT_QUERY : PROJECT_QUERY;
+	}
+	
 	/**
 	 * Creates an array list of project objects, using the values from the poisePMS database. 
 	 * <p>
@@ -172,82 +639,227 @@ public class Poise {
 	 * @param statement The line to the database for running queries
 	 * @return The array list containing all existing project objects listed in the database.
 	 * @throws SQLException - If a database error occurs.
+	 * @see createProject
 	 */
 	public static ArrayList<Project> getProjects(Statement statement) throws SQLException {
+		return getProjects(statement, "");
+	}
+	
+	/**
+	 * Creates an array list of the project objects which match a condition, using the values from the poisePMS database.
+	 * <p>
+	 * @param statement The line to the database for running queries
+	 * @param condition The WHERE clause for the projects to load, or "" for all projects.
+	 * @return The array list containing the matching project objects listed in the database.
+	 * @throws SQLException - If a database error occurs.
+	 * @see getProjects
+	 */
+	public static ArrayList<Project> getProjects(Statement statement, String condition) throws SQLException {
 		// For project objects to be added.
 		ArrayList<Project> projects = new ArrayList<>();
 		
 		// Get all results from the database required to create project objects
-        ResultSet results = statement.executeQuery("SELECT projects.PROJECTNUM, projects.projectName, "
-        		+ "projects.BUILDTYPE, projects.ERFNUM, sites.Address, projects.TOTALFEE, "
-        		+ "projects.totalpaid, projects.deadline, projects.customer, customers.Telephone, "
-        		+ "customers.Email, customers.Address, projects.contractor, contractors.Telephone, "
-        		+ "contractors.Email, contractors.Address, projects.architect, architects.Telephone,"
-        		+ "architects.Email, architects.Address, projects.projectManager, projects.completionDate "
-        		+ "FROM ((((projects JOIN sites on projects.ERFNUM = sites.ERFNUM) "
-        		+ "INNER JOIN customers on projects.customer = customers.customer) "
-        		+ "INNER JOIN contractors on projects.contractor = contractors.contractor)"
-        		+ "INNER JOIN architects on projects.architect = architects.architect)");
-
-        // Loop through results and save project values as variables
+        ResultSet results = statement.executeQuery(getProjectQuery() + condition);
+
+        // Loop through results and add each project to the array list
         while (results.next()) {
-        	int PROJECTNUM = results.getInt("projects.PROJECTNUM");
-        	
-        	String projectName = results.getString("projects.projectName");
-        	
-        	String BUILDTYPE = results.getString("projects.BUILDTYPE");
-        	
-        	int ERFNUM = results.getInt("projects.ERFNUM");
-        	
-        	String ADDRESS = results.getString("sites.ADDRESS");
-        	
-        	double TOTALFEE = results.getDouble("projects.TOTALFEE");
-        	
-        	double totalPaid = results.getDouble("projects.totalPaid");
-        	
-        	Date deadline = results.getDate("projects.deadline");
-        	
-        	String customerName = results.getString("projects.customer");
-        	String customerPhone = results.getString("customers.Telephone");
-        	String customerEmail = results.getString("customers.Email");
-         	String customerAddress = results.getString("customers.Address");
-        	String customerType = "Customer";
-        	
-        	// Create customer object for the project
-        	ProjectContact customerContact = new ProjectContact(customerType, customerName, customerPhone, customerEmail, customerAddress);
-        	
-        	String contractorName = results.getString("projects.contractor");
-        	String contractorPhone = results.getString("contractors.Telephone");
-        	String contractorEmail = results.getString("contractors.Email");
-        	String contractorAddress = results.getString("contractors.Address");
-        	String contractorType = "Contractor";
-        	
-        	// Create contractor object for the project
-        	ProjectContact contractorContact = new ProjectContact(contractorType, contractorName, contractorPhone, contractorEmail, contractorAddress);
-        	
-        	String architectName = results.getString("projects.architect");
-        	String architectPhone = results.getString("architects.Telephone");
-        	String architectEmail = results.getString("architects.Email");
-        	String architectAddress = results.getString("architects.Address");
-        	String architectType = "Architect";
-        	
-        	// Create architect object for the project
-        	ProjectContact architectContact = new ProjectContact(architectType, architectName, architectPhone, architectEmail, architectAddress);
-        	
-        	String projectManager = results.getString("projects.projectManager");
-        	
-        	String completionDate = results.getString("projects.completionDate");
-        	
-        	// Create project object
-        	Project existingProject = new Project(PROJECTNUM, projectName, BUILDTYPE, ERFNUM, ADDRESS, TOTALFEE, totalPaid, deadline, customerContact, contractorContact, architectContact, projectManager, completionDate);
-        	
-        	// Add the project to the array list
-        	projects.add(existingProject);
+        	projects.add(createProject(results));
         }
+        results.close();
         
         return projects;
     }
 	
+	/**
+	 * Creates a project object from the current row of a PROJECT_QUERY result set.
+	 * <p>
+	 * The row values are saved as variables. The variables are used to create the 
+	 * project contact objects, and the related project object.
+	 * <p>
+	 * If contact details are loaded on demand, the row is from a LAZY_PROJECT_QUERY result set
+	 * and the project contact objects are taken from the contact cache.
+	 * <p>
+	 * @param results The result set, positioned on the row to be read.
+	 * @return The project object for the row.
+	 * @throws SQLException - If a database error occurs.
+	 */
+	static Project createProject(ResultSet results) throws SQLException {
+		// Count the rows read, for the load progress
+		StartupLoader.projectsRead.incrementAndGet();
+		
+    	int PROJECTNUM = results.getInt("projects.PROJECTNUM");
+    	
+    	String projectName = results.getString("projects.projectName");
+    	
+    	String BUILDTYPE = results.getString("projects.BUILDTYPE");
+    	
+    	int ERFNUM = results.getInt("projects.ERFNUM");
+    	
+    	String ADDRESS = results.getString("sites.ADDRESS");
+    	
+    	double TOTALFEE = results.getDouble("projects.TOTALFEE");
+    	
+    	double totalPaid = results.getDouble("projects.totalPaid");
+    	
+    	Date deadline = results.getDate("projects.deadline");
+    	
+    	String projectManager = results.getString("projects.projectManager");
+    	
+    	String completionDate = results.getString("projects.completionDate");
+    	
+    	if (contactCache != null) {
+    		// Contact details are not in the row
+    		ProjectContact customerContact = contactCache.getContact("Customer", results.getString("projects.customer"));
+    		ProjectContact contractorContact = contactCache.getContact("Contractor", results.getString("projects.contractor"));
+    		ProjectContact architectContact = contactCache.getContact("Architect", results.getString("projects.architect"));
+    		return Project.create(PROJECTNUM, projectName, BUILDTYPE, ERFNUM, ADDRESS, TOTALFEE, totalPaid, deadline, customerContact, contractorContact, architectContact, projectManager, completionDate);
+    	}
+    	
+    	String customerName = results.getString("projects.customer");
+    	String customerPhone = results.getString("customers.Telephone");
+    	String customerEmail = results.getString("customers.Email");
+     	String customerAddress = results.getString("customers.Address");
+    	String customerType = "Customer";
+    	
+    	// Create customer object for the project
+    	ProjectContact customerContact = ProjectContact.create(customerType, customerName, customerPhone, customerEmail, customerAddress);
+    	
+    	String contractorName = results.getString("projects.contractor");
+    	String contractorPhone = results.getString("contractors.Telephone");
+    	String contractorEmail = results.getString("contractors.Email");
+    	String contractorAddress = results.getString("contractors.Address");
+    	String contractorType = "Contractor";
+    	
+    	// Create contractor object for the project
+    	ProjectContact contractorContact = ProjectContact.create(contractorType, contractorName, contractorPhone, contractorEmail, contractorAddress);
+    	
+    	String architectName = results.getString("projects.architect");
+    	String architectPhone = results.getString("architects.Telephone");
+    	String architectEmail = results.getString("architects.Email");
+    	String architectAddress = results.getString("architects.Address");
+    	String architectType = "Architect";
+    	
+    	// Create architect object for the project
+    	ProjectContact architectContact = ProjectContact.create(architectType, architectName, architectPhone, architectEmail, architectAddress);
+    	
+    	// Create project object
+    	return Project.create(PROJECTNUM, projectName, BUILDTYPE, ERFNUM, ADDRESS, TOTALFEE, totalPaid, deadline, customerContact, contractorContact, architectContact, projectManager, completionDate);
+	}
+	
+	/**
+	 * Finds the project object with the project number.
+	 * <p>
+	 * The projects array list is searched first. If the project is not in the list and
+	 * the project cache or shards are in use, or the projects are still loading, the project
+	 * is looked up in the database. If finalised projects are archived, the archive is searched.
+	 * <p>
+	 * @param projects The array list of project objects.
+	 * @param projectNum The project number to search for.
+	 * @return The project object, or null if no project has the project number.
+	 * @throws SQLException If a database error occurs.
+	 */
+	static Project findProject(ArrayList<Project> projects, int projectNum) throws SQLException {
+		for (Project counter : projects) {
+			if (counter.getProjectNum() == projectNum) {
+				return counter;
+			}
+		}
+		if (projectCache != null) {
+			return projectCache.getProject(projectNum);
+		}
+		if (projectShards != null) {
+			return projectShards.getProject(projectNum);
+		}
+		// Projects that are still loading are looked up in the database
+		if (startupLoader != null && !startupLoader.isMerged()) {
+			return startupLoader.findProject(projectNum);
+		}
+		if (projectArchive != null) {
+			try {
+				return projectArchive.getProject(projectNum);
+			} catch (IOException e) {
+				throw new SQLException("The project archive could not be read.", e);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Finds the project object with the project name (not case sensitive).
+	 * <p>
+	 * The projects array list is searched first. If the project is not in the list and
+	 * the project cache or shards are in use, the project is looked up in the database.
+	 * If finalised projects are archived, the archive is searched.
+	 * <p>
+	 * @param projects The array list of project objects.
+	 * @param projectName The project name to search for.
+	 * @return The project object, or null if no project has the project name.
+	 * @throws SQLException If a database error occurs.
+	 */
+	static Project findProject(ArrayList<Project> projects, String projectName) throws SQLException {
+		for (Project counter : projects) {
+			if (projectName.equalsIgnoreCase(counter.getProjectName())) {
+				return counter;
+			}
+		}
+		if (projectCache != null) {
+			return projectCache.getProject(projectName);
+		}
+		if (projectShards != null) {
+			return projectShards.getProject(projectName);
+		}
+		if (projectArchive != null) {
+			try {
+				return projectArchive.getProject(projectName);
+			} catch (IOException e) {
+				throw new SQLException("The project archive could not be read.", e);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Loads the contact details of the project objects, if contact details are loaded on demand.
+	 * <p>
+	 * The contacts for all of the projects are read together, before the projects are printed.
+	 * <p>
+	 * @param projects The project objects that will be printed, invoiced or edited.
+	 * @throws SQLException If a database error occurs.
+	 */
+	static void loadContacts(List<Project> projects) throws SQLException {
+		if (contactCache != null) {
+			contactCache.loadContacts(projects);
+		}
+	}
+	
+	/**
+	 * Gets the line to the database which holds the project.
+	 * <p>
+	 * @param project The project object to be updated.
+	 * @param statement The line to the default database.
+	 * @return The statement for the project's shard if shards are in use, otherwise the default statement.
+	 */
+	static Statement getStatement(Project project, Statement statement) {
+		if (projectShards != null) {
+			return projectShards.getStatement(project.getProjectNum());
+		}
+		return statement;
+	}
+	
+	/**
+	 * Gets the connection to the database which holds the project.
+	 * <p>
+	 * @param project The project object to be updated.
+	 * @param connection The connection to the default database.
+	 * @return The connection to the project's shard if shards are in use, otherwise the default connection.
+	 */
+	static Connection getConnection(Project project, Connection connection) {
+		if (projectShards != null) {
+			return projectShards.getConnection(project.getProjectNum());
+		}
+		return connection;
+	}
+	
 	// METHODS - CREATE PROJECT ---->
 	// Takes list of project strings and converts them to project objects
 	/**
@@ -270,10 +882,79 @@ public class Poise {
 			String contactAddress = userInput.nextLine();
 			
 			// Use fields to create object
-			ProjectContact newContact = new ProjectContact(contact, contactName, phone, email, contactAddress );
+			ProjectContact newContact = ProjectContact.create(contact, contactName, phone, email, contactAddress );
 			return newContact;
 	}
 
+	/**
+	 * Creates a new Project Contact object with a name that is not already in the database.
+	 * <p>
+	 * The name is checked with the contact name filter, so a duplicate name is rejected before
+	 * any SQL is sent, and the user is asked for the contact details again.
+	 * <p>
+	 * In the unified contacts table a name is unique across all roles. If the name is already used
+	 * by a contact with another role (or by another contact of the same project), that contact is
+	 * reused with its stored details, and the user is told which details are used.
+	 * 
+	 * @param userInput The Scanner which will be used for the user input values.
+	 * @param contact The contact value which can be either "Customer", "Contractor" or "Architect".
+	 * @param statement The line to the database used to read an existing contact's details.
+	 * @param projectContacts The contacts already entered for the same project.
+	 * @return The new Project Contact object
+	 * @throws SQLException If a database error occurs while reading an existing contact.
+	 */
+	static ProjectContact newUniqueContact(Scanner userInput, String contact, Statement statement, ProjectContact... projectContacts) throws SQLException {
+		ProjectContact newContact = newContact(userInput, contact);
+		while (contactNames.contains(contact, newContact.getContactName())) {
+			System.out.println("That " + contact.toLowerCase() + " name already exists. Please try again.");
+			newContact = newContact(userInput, contact);
+		}
+		if (unifiedContacts) {
+			ProjectContact existing = findContact(newContact.getContactName(), statement, projectContacts);
+			if (existing != null) {
+				newContact = ProjectContact.create(contact, existing.getContactName(), existing.getPhone(),
+						existing.getEmail(), existing.getContactAddress());
+				System.out.println(newContact.getContactName() + " is already a contact, so the stored details are used:");
+				System.out.println(newContact);
+			}
+		}
+		return newContact;
+	}
+
+	/**
+	 * Finds an existing contact in the unified contacts table by name, whatever its roles.
+	 * <p>
+	 * The contacts of the same project are checked first, then the contact name filter, and the
+	 * contacts table is only queried if the filter has the name in any role.
+	 * @param name The contact name.
+	 * @param statement The line to the database to run queries.
+	 * @param projectContacts The contacts already entered for the same project.
+	 * @return The existing contact with its stored details, or null if the name is new.
+	 * @throws SQLException If a database error occurs.
+	 */
+	private static ProjectContact findContact(String name, Statement statement, ProjectContact... projectContacts) throws SQLException {
+		for (ProjectContact projectContact : projectContacts) {
+			if (projectContact.getContactName().equalsIgnoreCase(name)) {
+				return projectContact;
+			}
+		}
+		boolean known = false;
+		for (String role : UnifiedContacts.ROLES) {
+			known = known || contactNames.contains(role, name);
+		}
+		if (!known) {
+			return null;
+		}
+		ProjectContact existing = null;
+		ResultSet results = statement.executeQuery("SELECT contactName, Telephone, Email, Address FROM contacts "
+				+ "WHERE contactName = '" + name.replace("'", "''") + "'");
+		if (results.next()) {
+			existing = ProjectContact.create("", results.getString(1), results.getString(2), results.getString(3), results.getString(4));
+		}
+		results.close();
+		return existing;
+	}
+
 	/**
 	 * Parses a string date input to the required Date value. 
 	 * <p>
@@ -336,22 +1017,15 @@ public class Poise {
 			int newProjectNum;
 			System.out.print("Project number: ");
 			String projectNumString = userInput.nextLine();
-			int count = 0;
 			
 			try{
 				newProjectNum = Integer.parseInt(projectNumString);
-				for(Project counter: projects) {
-					if(newProjectNum == counter.getProjectNum()){
-						System.out.println("That project number already exists.");
-						break;
-					}
-					else {
-						count += 1;
-					}
+				if(findProject(projects, newProjectNum) != null){
+					System.out.println("That project number already exists.");
+				}
+				else {
+					projectNum = newProjectNum;
 				}
-				if(count == projects.size()) {
-						projectNum = newProjectNum;
-					}
 			}catch(NumberFormatException e) {
 				System.out.println("Error! Only integers are to be entered.");
 			}
@@ -367,6 +1041,11 @@ public class Poise {
 			String ERFNumString = userInput.nextLine();
 			try {
 				ERFNum = Integer.parseInt(ERFNumString);
+				// Each site can only be added once, so duplicates are rejected before any SQL is run
+				if (erfIndex.contains(ERFNum)) {
+					System.out.println("That ERF number already exists.");
+					ERFNum = 0;
+				}
 			}catch(NumberFormatException e) {
 				System.out.println("Error! Only integers are to be entered.");
 			}
@@ -405,17 +1084,20 @@ public class Poise {
 			deadline = formatDateString(deadlineString);
 		}
 		
+		// Existing contacts are read from the database that will hold the project
+		Statement contactStatement = (projectShards != null) ? projectShards.getStatement(projectNum) : statement;
+		
 		// CUSTOMER - Object
 		String customerContact = "Customer";
-		customer = newContact(userInput, customerContact);
+		customer = newUniqueContact(userInput, customerContact, contactStatement);
 		
 		// CONTRACTOR - Object
 		String contractorContact = "Contractor";
-		contractor = newContact(userInput, contractorContact);
+		contractor = newUniqueContact(userInput, contractorContact, contactStatement, customer);
 		
 		// ARCHITECT - Object
 		String architectContact = "Architect";
-		architect = newContact(userInput, architectContact);
+		architect = newUniqueContact(userInput, architectContact, contactStatement, customer, contractor);
 		
 		// PROJECTNAME - auto-assignment option incl.
 		System.out.print("Enter project name: ");
@@ -423,7 +1105,7 @@ public class Poise {
 
 		// PROJECTNAME - For empty input
 		if(projectNameTemp.equals("")) {
-			String custName = customer.contactName;
+			String custName = customer.getContactName();
 			String[] splitName = custName.split(" ");
 			try {
 				projectName = buildType + " " + splitName[1];
@@ -440,8 +1122,82 @@ public class Poise {
 		System.out.print("Project Manager: ");
 		projectManager = userInput.nextLine();
 		
-		// Variable used to control update of array list
-		boolean  successfulUpdate = false;
+		// The project's site, contacts and project record are added to the shard that owns the project
+		if (projectShards != null) {
+			connection = projectShards.getConnection(projectNum);
+			statement = projectShards.getStatement(projectNum);
+		}
+		
+		// Variable used to control update of array list
+		boolean  successfulUpdate = false;
+		
+		Project newProject = Project.create(projectNum, projectName, buildType, ERFNum, address, totalFee, totalPaid, deadline, customer, contractor, architect, projectManager, completionDate);
+		try {
+			insertProject(newProject, statement, connection);
+			successfulUpdate = true;
+		} catch (SQLException e) {
+				System.out.println("Not all data for this project was accepted "
+						+ "to the database.\nPlease try again.");
+		}
+		if (successfulUpdate) {
+			// Update array list once the database is updated
+			System.out.println("The new project - " + newProject.getProjectName() + " - has been added.");
+			System.out.println();
+			System.out.println(newProject);
+			if (contactCache != null) {
+				contactCache.put(customer);
+				contactCache.put(contractor);
+				contactCache.put(architect);
+			}
+			contactNames.add(customerContact, customer.getContactName());
+			contactNames.add(contractorContact, contractor.getContactName());
+			contactNames.add(architectContact, architect.getContactName());
+			if (projectCache != null) {
+				projectCache.put(newProject);
+			}
+			else {
+				projects.add(newProject);
+			}
+			for (ProjectListener listener : projectListeners) {
+				listener.projectAdded(newProject);
+			}
+		}
+	}
+	
+	/**
+	 * Adds a new project's site, contacts and project record to the database, all or nothing.
+	 * <p>
+	 * If the database has the add_project stored procedure, the rows are inserted with one call,
+	 * and the procedure commits them in one transaction or rolls them all back. This is one round
+	 * trip to the database. Otherwise, auto commit is turned off and the five rows are inserted
+	 * separately, then committed (or rolled back to a savepoint if an insert fails).
+	 * <p>
+	 * If the contacts are in the unified contacts table, a contact that already exists is given
+	 * the new role instead of being added again. Its stored details were loaded when it was
+	 * entered, so the project object has the same details as the table.
+	 * <p>
+	 * @param project The new project object.
+	 * @param statement The line to the database to run updates.
+	 * @param connection The connection to the database, used to control changes committed.
+	 * @throws SQLException If any of the rows could not be inserted. None of the rows are kept.
+	 * @see DataGenerator#ADD_PROJECT_PROCEDURE
+	 */
+	static void insertProject(Project project, Statement statement, Connection connection) throws SQLException {
+		ProjectContact customer = project.getCustomer();
+		ProjectContact contractor = project.getContractor();
+		ProjectContact architect = project.getArchitect();
+		String deadlineString = LocalDate.ofEpochDay(project.getDeadlineDay()).toString();
+		
+		if (addProjectProcedure) {
+			statement.execute("CALL add_project('"+project.getProjectNum()+"','"+project.getProjectName()+"','"
+					+project.getBuildType()+"','"+project.getERFNum()+"','"+project.getAddress()+"','"
+					+project.getTotalFee()+"','"+project.getTotalPaid()+"','"+deadlineString+"','"
+					+customer.getContactName()+"','"+customer.getPhone()+"','"+customer.getEmail()+"','"+customer.getContactAddress()+"','"
+					+contractor.getContactName()+"','"+contractor.getPhone()+"','"+contractor.getEmail()+"','"+contractor.getContactAddress()+"','"
+					+architect.getContactName()+"','"+architect.getPhone()+"','"+architect.getEmail()+"','"+architect.getContactAddress()+"','"
+					+project.getProjectManager()+"')");
+			return;
+		}
 		
 		Savepoint savepoint = null;
 		
@@ -454,47 +1210,59 @@ public class Poise {
 			
 			//Update tables
 			statement.executeUpdate("INSERT INTO sites "
-					+ "VALUES('"+ERFNum+"','"+address+"')");
+					+ "VALUES('"+project.getERFNum()+"','"+project.getAddress()+"')");
 			
-			statement.executeUpdate("INSERT INTO customers "
-					+ "VALUES('"+customer.getContactName()+"', '"+customer.getPhone()+"','"
-					+customer.getEmail()+"','"+customer.getContactAddress()+"')");
-			
-			statement.executeUpdate("INSERT INTO contractors "
-					+ "VALUES('"+contractor.getContactName()+"', '"+contractor.getPhone()+"','"
-					+contractor.getEmail()+"','"+contractor.getContactAddress()+"')");
-			
-			statement.executeUpdate("INSERT INTO architects "
-					+ "VALUES('"+architect.getContactName()+"', '"+architect.getPhone()+"','"
-					+architect.getEmail()+"','"+architect.getContactAddress()+"')");
+			if (unifiedContacts) {
+				statement.executeUpdate(UnifiedContacts.insert(customer));
+				statement.executeUpdate(UnifiedContacts.insert(contractor));
+				statement.executeUpdate(UnifiedContacts.insert(architect));
+			}
+			else {
+				statement.executeUpdate("INSERT INTO customers "
+						+ "VALUES('"+customer.getContactName()+"', '"+customer.getPhone()+"','"
+						+customer.getEmail()+"','"+customer.getContactAddress()+"')");
+				
+				statement.executeUpdate("INSERT INTO contractors "
+						+ "VALUES('"+contractor.getContactName()+"', '"+contractor.getPhone()+"','"
+						+contractor.getEmail()+"','"+contractor.getContactAddress()+"')");
+				
+				statement.executeUpdate("INSERT INTO architects "
+						+ "VALUES('"+architect.getContactName()+"', '"+architect.getPhone()+"','"
+						+architect.getEmail()+"','"+architect.getContactAddress()+"')");
+			}
 			
 			// Projects must be updated last, due to foreign keys
 			statement.executeUpdate("INSERT INTO projects "
-					+ "VALUES('"+projectNum+"','"+projectName+"','"+buildType+"','"+ERFNum
-					+"','"+totalFee+"','"+totalPaid+"','"+deadlineString+"','"
+					+ "VALUES('"+project.getProjectNum()+"','"+project.getProjectName()+"','"+project.getBuildType()+"','"+project.getERFNum()
+					+"','"+project.getTotalFee()+"','"+project.getTotalPaid()+"','"+deadlineString+"','"
 					+customer.getContactName()+"', '"+contractor.getContactName()+"','"
-					+architect.getContactName()+"', '"+projectManager+"', NULL)");
+					+architect.getContactName()+"', '"+project.getProjectManager()+"', NULL)");
 
 			// Commit changes
 			connection.commit();
-
-			successfulUpdate = true;
 		
 		} catch (SQLException e) {
-				System.out.println("Not all data for this project was accepted "
-						+ "to the database.\nPlease try again.");
+			if (savepoint != null) {
 				connection.rollback(savepoint);
+			}
+			throw e;
+		} finally {
+			// Restore auto commit once complete.
+			connection.setAutoCommit(true);
 		}
-		if (successfulUpdate) {
-			// Update array list once the database is updated
-			Project newProject = new Project(projectNum, projectName, buildType, ERFNum, address, totalFee, totalPaid, deadline, customer, contractor, architect, projectManager, completionDate);
-			System.out.println("The new project - " + newProject.getProjectName() + " - has been added.");
-			System.out.println();
-			System.out.println(newProject);
-			projects.add(newProject);
+	}
+	
+	/**
+	 * Checks if a database has the add_project stored procedure.
+	 * <p>
+	 * @param connection The connection to the database.
+	 * @return True if the procedure exists.
+	 * @throws SQLException If a database error occurs.
+	 */
+	static boolean hasAddProjectProcedure(Connection connection) throws SQLException {
+		try (ResultSet results = connection.getMetaData().getProcedures(connection.getCatalog(), null, "add_project")) {
+			return results.next();
 		}
-		// Restore auto commit once complete.
-		connection.setAutoCommit(true);
 	}
 	
 	/**
@@ -506,7 +1274,10 @@ public class Poise {
 		System.out.print("\n-----------Main Menu-----------\n1 - Add New Project\n"
 				+ "2 - Edit/Finalise Project\n3 - View a Selected Project"
 				+ "\n4 - View Incomplete Projects\n5 - View Overdue Projects\n"
-				+ "6 - Exit\n\nPlease make your selection: ");
+				+ "6 - Exit\n7 - View Project History\n8 - Export Projects\n"
+				+ "9 - Bulk Reassign Contractor\n10 - Reconcile Bank Statement\n"
+				+ "11 - View Receivables Dashboard\n12 - View Projects by Person\n"
+				+ "13 - View Projects by ERF Number\n14 - Query Projects\n\nPlease make your selection: ");
 	}
 	
 	// METHODS - EDIT PROJECT 	---->																			
@@ -527,8 +1298,9 @@ public class Poise {
 	 * @param userInput The Scanner for the user to input the selection.
 	 * @return The selected project object to be edited.
 	 * @exception NumberFormatException The exception is handled with a try-catch block.
+	 * @throws SQLException If a database error occurs while looking up a project that is not cached.
 	 */
-	private static Project selectProject(ArrayList<Project> projects, Scanner userInput) {
+	private static Project selectProject(ArrayList<Project> projects, Scanner userInput) throws SQLException {
 		Project selectedProject = null;
 		
 		System.out.println();
@@ -541,19 +1313,17 @@ public class Poise {
 			try {
 				// Parse to an integer to check if the project number was entered.
 				int projectNumberSelection = Integer.parseInt(projectSelection);
-				// Check if there is a project in the projects array list...
-				for(int i = 0; i < projects.size(); i++) {
-					// ...that has the project number...
-					if(projectNumberSelection == projects.get(i).getProjectNum()) {
-						// ...and is incomplete (method is only used for editing)...
-						if((projects.get(i).getCompletionDate()) == null) {
-							//...and save the project if a match is found.
-							selectedProject = projects.get(i);
-						}
-						else {
-							// Error message for matches that are complete.
-							System.out.println("Finalised projects cannot be edited.");
-						}
+				// Check if there is a project that has the project number...
+				Project match = findProject(projects, projectNumberSelection);
+				if(match != null) {
+					// ...and is incomplete (method is only used for editing)...
+					if(!match.isFinalised()) {
+						//...and save the project if a match is found.
+						selectedProject = match;
+					}
+					else {
+						// Error message for matches that are complete.
+						System.out.println("Finalised projects cannot be edited.");
 					}
 				}
 				// Error message for no matches found
@@ -563,12 +1333,9 @@ public class Poise {
 			// If the entry was not a number (the parse failed)	
 			}catch(NumberFormatException e) {
 				// The entry is checked as a project name.
-				for(int i = 0; i < projects.size(); i++) {
-					if(projectSelection.equalsIgnoreCase(projects.get(i).getProjectName())) {
-						if((projects.get(i).getCompletionDate()) == null) {
-							selectedProject = projects.get(i);
-						}
-					}
+				Project match = findProject(projects, projectSelection);
+				if(match != null && !match.isFinalised()) {
+					selectedProject = match;
 				}
 				// Error message for no matches found
 				if (selectedProject == null) {
@@ -576,6 +1343,8 @@ public class Poise {
 				}
 			}
 		}
+		// Contact details are required for editing and invoices
+		loadContacts(Arrays.asList(selectedProject));
 		return selectedProject;
 	}
 	
@@ -657,7 +1426,11 @@ public class Poise {
 		System.out.println("The project deadline has been updated from " + oldDeadline + " to " + newDeadlineString);
 		
 		// Overwrite deadline
+		Date previousDeadline = project.getDeadline();
 		project.setDeadline(newDeadline);
+		for (ProjectListener listener : projectListeners) {
+			listener.deadlineChanged(project, previousDeadline);
+		}
 		
 		return project;
 	}
@@ -678,7 +1451,7 @@ public class Poise {
 		System.out.println();
 		System.out.println("\t***Update Contractor***");
 		System.out.println();
-		ProjectContact newContractor = newContact(userInput, contact);
+		ProjectContact newContractor = newUniqueContact(userInput, contact, statement);
 		boolean successfulUpdate = false;
 		
 		// Initiate savepoint variable
@@ -692,7 +1465,8 @@ public class Poise {
 			savepoint1 = connection.setSavepoint("Savepoint1");
 			
 			// Add new contractor to contractors table
-			statement.executeUpdate("INSERT INTO contractors VALUES('"+newContractor.getContactName()
+			statement.executeUpdate(unifiedContacts ? UnifiedContacts.insert(newContractor)
+					: "INSERT INTO contractors VALUES('"+newContractor.getContactName()
 					+"','"+newContractor.getPhone()+"','"+newContractor.getEmail()
 					+"','"+newContractor.getContactAddress()+"')");
 			
@@ -701,9 +1475,16 @@ public class Poise {
 					"UPDATE projects SET contractor= '"+newContractor.getContactName()
 					+"'WHERE PROJECTNUM ='"+project.getProjectNum()+"'");
 			
-			// Delete previous contractor value
-			statement.executeUpdate("DELETE from contractors "
-					+ "WHERE contractor = '"+currentContractorName+"'");
+			// Delete previous contractor value (in the unified table, only its contractor role)
+			if (unifiedContacts) {
+				for (String update : UnifiedContacts.removeRole(contact, Arrays.asList("'" + currentContractorName + "'"))) {
+					statement.executeUpdate(update);
+				}
+			}
+			else {
+				statement.executeUpdate("DELETE from contractors "
+						+ "WHERE contractor = '"+currentContractorName+"'");
+			}
 			
 			// Commit changes
 			connection.commit();
@@ -721,7 +1502,16 @@ public class Poise {
 
 		if (successfulUpdate) {
 			// Overwrite contractor object
+			ProjectContact oldContractor = project.contractor;
 			project.contractor = newContractor;
+			if (contactCache != null) {
+				contactCache.put(newContractor);
+			}
+			contactNames.add(contact, newContractor.getContactName());
+			contactNames.remove(contact, currentContractorName);
+			for (ProjectListener listener : projectListeners) {
+				listener.contractorReplaced(project, oldContractor);
+			}
 			System.out.println("The Contractor details for " + project.getProjectName() + " have "
 					+ "been updated.");
 		}
@@ -730,6 +1520,178 @@ public class Poise {
 		return project;
 	}
 
+	/**
+	 * Replaces the contractor on every open project that matches a filter.
+	 * <p>
+	 * The user selects the filter - current contractor, project manager or building type - and
+	 * enters the new contractor's details. In one transaction, the new contractor is added to the
+	 * contractors table, all matching projects that are not finalised are updated with one UPDATE
+	 * statement, and the previous contractors that are no longer used by any project are deleted.
+	 * <p>
+	 * Once the transaction is committed, all matching project objects in memory are updated.
+	 * <p>
+	 * @param userInput The Scanner used to input the filter and new contractor details.
+	 * @param projects The array list of project objects.
+	 * @param statement The line to the database to run queries.
+	 * @param connection The connection to the database used to control changes committed.
+	 * @throws SQLException If the method is called on a closed connection.
+	 */
+	public static void bulkReassignContractor(Scanner userInput, ArrayList<Project> projects, Statement statement, Connection connection) throws SQLException {
+		System.out.println();
+		System.out.println("\t***Bulk Reassign Contractor***");
+		System.out.println();
+		
+		if (projectShards != null) {
+			System.out.println("Error! Contractors cannot be reassigned across shards in one transaction.");
+			return;
+		}
+		
+		// Select the filter
+		int filterChoice = 0;
+		while (filterChoice < 1 || filterChoice > 3) {
+			System.out.print("Reassign projects by:\n1 - Current Contractor\n2 - Project Manager\n3 - Building Type\n\nPlease make your selection: ");
+			filterChoice = getMenuChoice(userInput, filterChoice);
+		}
+		String[] filterColumns = {"contractor", "projectManager", "BUILDTYPE"};
+		String filterColumn = filterColumns[filterChoice - 1];
+		System.out.print("Value to match: ");
+		String filterValue = userInput.nextLine();
+		String condition = " WHERE " + filterColumn + " = '" + filterValue.replace("'", "''") + "' AND completionDate IS NULL";
+		
+		// Contractors currently on the matching projects, which may no longer be needed
+		ArrayList<String> oldContractors = new ArrayList<>();
+		try {
+			ResultSet results = statement.executeQuery("SELECT DISTINCT contractor FROM projects" + condition);
+			while (results.next()) {
+				oldContractors.add("'" + results.getString(1).replace("'", "''") + "'");
+			}
+			results.close();
+		} catch (SQLException e) {
+			System.out.println("Error! The matching projects could not be found.");
+			return;
+		}
+		if (oldContractors.isEmpty()) {
+			System.out.println("There are no open projects that match.");
+			return;
+		}
+		
+		ProjectContact newContractor = newUniqueContact(userInput, "Contractor", statement);
+		
+		int rowsAffected = 0;
+		boolean successfulUpdate = false;
+		Savepoint savepoint = null;
+		
+		try {
+			connection.setAutoCommit(false);
+			savepoint = connection.setSavepoint("BulkSavepoint");
+			
+			// Add new contractor to contractors table
+			statement.executeUpdate(unifiedContacts ? UnifiedContacts.insert(newContractor)
+					: "INSERT INTO contractors VALUES('"+newContractor.getContactName()
+					+"','"+newContractor.getPhone()+"','"+newContractor.getEmail()
+					+"','"+newContractor.getContactAddress()+"')");
+			
+			// Update all matching projects at once
+			rowsAffected = statement.executeUpdate("UPDATE projects SET contractor= '"
+					+newContractor.getContactName()+"'" + condition);
+			
+			// Delete previous contractors that no project uses
+			if (unifiedContacts) {
+				for (String update : UnifiedContacts.removeRole("Contractor", oldContractors)) {
+					statement.executeUpdate(update);
+				}
+			}
+			else {
+				statement.executeUpdate("DELETE FROM contractors WHERE contractor IN ("
+						+ String.join(", ", oldContractors) + ") AND contractor NOT IN "
+						+ "(SELECT contractor FROM projects)");
+			}
+			
+			connection.commit();
+			successfulUpdate = true;
+		} catch (SQLException e) {
+			System.out.println("The contractors could not be reassigned. That contractor name may already exist."
+					+ "\nPlease try again.");
+			connection.rollback(savepoint);
+		}
+		connection.setAutoCommit(true);
+		
+		if (successfulUpdate) {
+			// Update the matching project objects in memory
+			ArrayList<Project> loaded = new ArrayList<>(projects);
+			if (projectCache != null) {
+				loaded.addAll(projectCache.getCachedProjects());
+			}
+			if (contactCache != null) {
+				contactCache.put(newContractor);
+			}
+			// Only the previous contractors that are still in the table keep their names
+			for (String oldContractor : oldContractors) {
+				contactNames.remove("Contractor", oldContractor.substring(1, oldContractor.length() - 1).replace("''", "'"));
+			}
+			ResultSet remaining = statement.executeQuery(unifiedContacts
+					? "SELECT contactName FROM contacts WHERE contactName IN (" + String.join(", ", oldContractors)
+							+ ") AND " + UnifiedContacts.hasRole("Contractor")
+					: "SELECT contractor FROM contractors WHERE contractor IN (" + String.join(", ", oldContractors) + ")");
+			while (remaining.next()) {
+				contactNames.add("Contractor", remaining.getString(1));
+			}
+			remaining.close();
+			contactNames.add("Contractor", newContractor.getContactName());
+			for (Project project : loaded) {
+				String value = (filterChoice == 1) ? project.contractor.getContactName()
+						: (filterChoice == 2) ? project.getProjectManager() : project.getBuildType();
+				if (!project.isFinalised() && filterValue.equalsIgnoreCase(value)) {
+					ProjectContact oldContractor = project.contractor;
+					project.contractor = newContractor;
+					for (ProjectListener listener : projectListeners) {
+						listener.contractorReplaced(project, oldContractor);
+					}
+				}
+			}
+			System.out.println("The contractor has been replaced on " + rowsAffected + " projects.");
+		}
+	}
+
+	/**
+	 * Posts the payments in a bank statement file to the matching projects.
+	 * <p>
+	 * The user enters the statement file (CSV or OFX) and the file for the unmatched items report.
+	 * The statement is read and posted by the payment reconciler.
+	 * <p>
+	 * @param userInput The Scanner used to input the file names.
+	 * @param projects The array list of project objects.
+	 * @param statement The line to the database to run queries.
+	 * @param connection The connection to the database used to control changes committed.
+	 * @throws SQLException If the method is called on a closed connection.
+	 * @see PaymentReconciler
+	 */
+	public static void reconcilePayments(Scanner userInput, ArrayList<Project> projects, Statement statement, Connection connection) throws SQLException {
+		System.out.println();
+		System.out.println("\t***Reconcile Bank Statement***");
+		System.out.println();
+		
+		if (projectShards != null) {
+			System.out.println("Error! Bank statements cannot be reconciled on shards.");
+			return;
+		}
+		
+		System.out.print("Statement file: ");
+		String statementFile = userInput.nextLine().trim();
+		System.out.print("Unmatched items report (unmatched.csv): ");
+		String reportFile = userInput.nextLine().trim();
+		if (reportFile.equals("")) {
+			reportFile = "unmatched.csv";
+		}
+		
+		PaymentReconciler reconciler = new PaymentReconciler(projects, statement, connection, 500);
+		try {
+			reconciler.reconcile(Paths.get(statementFile), Paths.get(reportFile));
+		} catch (IOException e) {
+			System.out.println("Error! The statement could not be read or the report could not be written.");
+		}
+	}
+
 	/**
 	 * Updates the amount paid for the project object.
 	 * <p>
@@ -765,17 +1727,21 @@ public class Poise {
 				System.out.println("\nError. Please enter a value in rands and cents.\n");
 			}
 		}
-		// Update totalPaid value in project object
-		double newTotalPaid = project.getTotalPaid() + payment;
-		project.setTotalPaid(newTotalPaid);
-		
-		// Update database with new totalPaid value
+		// Add the payment in the database, so a payment made by another session is not overwritten
 		try {
 			statement.executeUpdate(
-					"UPDATE projects SET totalPaid= '"+project.getTotalPaid()+"'WHERE PROJECTNUM ='"+project.getProjectNum()+"'"
+					"UPDATE projects SET totalPaid = totalPaid + '"+payment+"' WHERE PROJECTNUM ='"+project.getProjectNum()+"'"
 					);
+			
+			// Update totalPaid value in project object with the new total
+			ResultSet results = statement.executeQuery("SELECT totalPaid FROM projects WHERE PROJECTNUM = '" + project.getProjectNum() + "'");
+			project.setTotalPaid(results.next() ? results.getDouble(1) : project.getTotalPaid() + payment);
+			results.close();
 			DecimalFormat decimalFormat = new DecimalFormat("#.00", DecimalFormatSymbols.getInstance(Locale.US));
 			System.out.println("The payment of R" + decimalFormat.format(payment) + " has been added.");
+			for (ProjectListener listener : projectListeners) {
+				listener.paymentAdded(project, payment);
+			}
 		} catch (SQLException e) {
 			System.out.println("Error! The database failed to update.");
 		}
@@ -833,38 +1799,109 @@ public class Poise {
 		String completionDate = date.toString();
 		
 		// Set new string value for project name
-		String newName = project.projectName + " (Finalised)";
+		String newName = project.getProjectName() + " (Finalised)";
 		
 		// Update the record in the database
+		boolean successfulUpdate = false;
 		try {
 			statement.executeUpdate(
 						"UPDATE projects SET completionDate= '"+completionDate+"', "
 								+ "projectName= '"+newName+"' WHERE PROJECTNUM ='"+project.getProjectNum()+"'"
 						);
+			successfulUpdate = true;
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
 		
 		// Update completion date of object
+		String oldName = project.getProjectName();
 		project.setCompletionDate(completionDate);
 			
 		// Update project name of object
 		project.setProjectName(newName);
 		
+		if (successfulUpdate) {
+			for (ProjectListener listener : projectListeners) {
+				listener.projectFinalised(project, oldName);
+			}
+		}
+		
 		return project;
 	}
 	
 	// METHODS - VIEW PROJECTS		---->
+	
+	/** WHERE clause for projects that have not been finalised. */
+	static final String INCOMPLETE_CONDITION = " WHERE projects.completionDate IS NULL";
+	
+	/** WHERE clause for projects that have not been finalised and are past their deadline. */
+	static final String OVERDUE_CONDITION = " WHERE projects.completionDate IS NULL AND projects.deadline <= CURDATE()";
+	
+	/**
+	 * Gets the list of project objects to be used for a view.
+	 * <p>
+	 * When all projects are loaded, the projects array list is returned. When the project cache
+	 * is in use, only the projects matching the condition are read from the database. When shards
+	 * are in use, the matching projects are read from all of the shards.
+	 * <p>
+	 * @param projects The array list of project objects.
+	 * @param condition The WHERE clause for the view, used when the projects are not all loaded.
+	 * @return The list of project objects to be filtered and printed by the view.
+	 * @throws SQLException If a database error occurs.
+	 */
+	static ArrayList<Project> getViewProjects(ArrayList<Project> projects, String condition) throws SQLException {
+		if (projectShards != null) {
+			return projectShards.getProjects(condition);
+		}
+		if (projectCache != null) {
+			return projectCache.getProjects(condition);
+		}
+		return projects;
+	}
+	/**
+	 * Plans a query over the projects of a view, with the archived projects that meet its conditions.
+	 * <p>
+	 * Archived projects are not loaded, so when finalised projects are archived, the archived
+	 * projects that meet the condition are read from the database and added to the plan (unless
+	 * the query only matches open projects). Projects finalised since startup are still loaded,
+	 * and are not read again.
+	 * <p>
+	 * @param query The query.
+	 * @param projects The array list of project objects.
+	 * @param condition The WHERE clause for the query's conditions, or an empty string for all projects.
+	 * @param statement The line to the database for running queries.
+	 * @return The query plan.
+	 * @throws SQLException If a database error occurs.
+	 */
+	static QueryPlan planViewQuery(ProjectQuery query, ArrayList<Project> projects, String condition, Statement statement) throws SQLException {
+		QueryPlan plan = query.plan(getViewProjects(projects, condition));
+		if (projectArchive != null && !query.isOpenOnly()) {
+			ArrayList<Project> archived = new ArrayList<>();
+			ResultSet results = getReadStatement(statement).executeQuery(getProjectQuery()
+					+ (condition.isEmpty() ? " WHERE " : condition + " AND ") + "projects.completionDate IS NOT NULL");
+			while (results.next()) {
+				if (projectArchive.contains(results.getInt("projects.PROJECTNUM"))) {
+					archived.add(createProject(results));
+				}
+			}
+			results.close();
+			plan.addArchived(archived);
+		}
+		return plan;
+	}
+	
 	/**
 	 * Allows the user to select and print a project from the projects array list to the console.
 	 * <p>
 	 * There is a loop to receive the project selection from the user. Invalid selections will trigger 
-	 * an error message, and restart the loop.
+	 * an error message, and restart the loop. Projects selected by number are found with a project
+	 * query, so with --snapshots they are read from the latest project snapshot.
 	 * <p>
 	 * @param projects The array list of project objects.
 	 * @param userInput The Scanner used for the user to select a project
+	 * @throws SQLException If a database error occurs while looking up a project that is not cached.
 	 */
-	public static void printSelectedProject(ArrayList<Project> projects, Scanner userInput) {
+	public static void printSelectedProject(ArrayList<Project> projects, Scanner userInput) throws SQLException {
 		// Initiate variable for loop
 		Project selectedProject = null;
 		
@@ -883,20 +1920,16 @@ public class Poise {
 			// Assume the project number will be entered
 			try {
 				int projectNumberSelection = Integer.parseInt(projectSelection);
-				// Iterate through the projects list
-				for(int i = 0; i < projects.size(); i++) {
-					// If a match is found, the project is selected
-					if(projectNumberSelection == projects.get(i).getProjectNum()) {
-						selectedProject = projects.get(i);
-					}
+				// If a match is found, the project is selected (the query plan reads it from the latest
+				// snapshot if snapshots are kept). Projects that are not in the list are then looked up.
+				selectedProject = new ProjectQuery().where(ProjectQuery.Field.PROJECT_NUM, ProjectQuery.Operator.EQUALS,
+						projectNumberSelection).first(projects);
+				if (selectedProject == null) {
+					selectedProject = findProject(projects, projectNumberSelection);
 				}
 			// If not, the exception will trigger a search for the project name.
 			}catch(NumberFormatException e) {
-				for(int i = 0; i < projects.size(); i++) {
-					if(projectSelection.equalsIgnoreCase(projects.get(i).getProjectName())) {
-						selectedProject = projects.get(i);
-					}
-				}
+				selectedProject = findProject(projects, projectSelection);
 			}
 			// If no project number or names are matched, the user is notified.
 			if (selectedProject == null) {
@@ -904,47 +1937,51 @@ public class Poise {
 			}
 		}
 		// If the project was successfully found, the project prints.
+		loadContacts(Arrays.asList(selectedProject));
 		System.out.println(selectedProject);
 	}
 	
 	/**
 	 * Prints the project objects that are overdue.
 	 * <p>
-	 * The method first checks if the project is complete, by checking the value for the
-	 * completion date. If this value is null, the project is not finalised.
+	 * When all projects are loaded, the printed text is kept in the view cache, and is only
+	 * built again for projects that have changed, or when the date has changed.
 	 * <p>
-	 * The method then checks the deadline of the incomplete projects.
-	 * If the current date is after the deadline and the completion date is empty, 
-	 * the project is printed.
+	 * Otherwise the projects are found with a project query: projects with no completion date,
+	 * and a deadline on or before the current date, are printed.
 	 * <p>
 	 * @param projects The list of project objects
+	 * @throws SQLException If a database error occurs while loading contact details.
 	 */
-	public static void printOverdueProjects(ArrayList<Project> projects) {
+	public static void printOverdueProjects(ArrayList<Project> projects) throws SQLException {
 		// Heading
 		System.out.println();
 		System.out.println("\t***Overdue Projects***\t");
 		System.out.println();
 		
-		// Get current date for comparison
-		Date today = new Date();
+		// When all projects are loaded, the view is printed from the view cache
+		if (viewCache != null && projectShards == null && projectCache == null) {
+			ViewCache.View view = viewCache.getOverdue();
+			System.out.print(view.getText());
+			if(view.getProjects() == 0) {
+				System.out.println("\nThere are no overdue projects.\n");
+			}
+			return;
+		}
 		
-		// Set counter for message if no projects are overdue.
-		int count = 0;
+		// Projects that are incomplete and whose deadline has passed
+		ArrayList<Project> overdue = new ProjectQuery()
+				.where(ProjectQuery.Field.COMPLETION_DATE, ProjectQuery.Operator.IS_NULL)
+				.where(ProjectQuery.Field.DEADLINE, ProjectQuery.Operator.LESS_OR_EQUAL, LocalDate.now())
+				.run(projects);
 		
-		// Loops through the array list
-		for(Project counter: projects) {
-			// Checks if incomplete
-			if(counter.getCompletionDate() == null) {
-				// Checks if deadline has passed
-				if(today.after(counter.getDeadline())){
-					// Prints if conditions met
-					System.out.println(counter);
-					count +=1;
-				}
-			}
+		// Prints the projects that met the conditions
+		loadContacts(overdue);
+		for(Project counter: overdue) {
+			System.out.println(counter);
 		}
 		// Print message if no projects were printed.
-		if(count == 0) {
+		if(overdue.size() == 0) {
 			System.out.println("\nThere are no overdue projects.\n");
 		}
 	}
@@ -952,33 +1989,290 @@ public class Poise {
 	/**
 	 * Prints the project objects that are incomplete. 
 	 * <p>
-	 * To check whether the project is incomplete, the loop searches for
-	 * an empty string (null value) as a completion date value.
+	 * The incomplete projects are found with a project query for projects
+	 * that have not been finalised (have no completion date).
+	 * <p>
+	 * When all projects are loaded, the printed text is kept in the view cache, and is only
+	 * built again for projects that have changed.
 	 * <p>
 	 * @param projects The list of project objects
+	 * @throws SQLException If a database error occurs while loading contact details.
 	 */
-	public static void printIncompleteProjects(ArrayList<Project> projects) {
+	public static void printIncompleteProjects(ArrayList<Project> projects) throws SQLException {
 		// Heading
 		System.out.println();
 		System.out.println("\t***Incomplete Projects***\t");
 		System.out.println();
 		
-		// Set counter for message if no projects are incomplete.
-		int count = 0;
-		
-		// Loops through array list
-		for(Project counter: projects) {
-			// Checks if incomplete
-			if(counter.getCompletionDate() == null) {
-				// Prints if conditions met
-				System.out.println(counter);
-				count +=1;
+		// When all projects are loaded, the view is printed from the view cache
+		if (viewCache != null && projectShards == null && projectCache == null) {
+			ViewCache.View view = viewCache.getIncomplete();
+			System.out.print(view.getText());
+			if(view.getProjects() == 0) {
+				System.out.println("\nThere are no incomplete projects.\n");
 			}
+			return;
+		}
+		
+		// Projects with no completion date
+		ArrayList<Project> incomplete = new ProjectQuery()
+				.where(ProjectQuery.Field.COMPLETION_DATE, ProjectQuery.Operator.IS_NULL)
+				.run(projects);
+		
+		// Prints the projects that met the conditions
+		loadContacts(incomplete);
+		for(Project counter: incomplete) {
+			System.out.println(counter);
 		}
 		// Print message if no projects were printed.
-		if(count == 0) {
+		if(incomplete.size() == 0) {
 			System.out.println("\nThere are no incomplete projects.\n");
 		}
 	}
 	
+	/**
+	 * Prints the receivables dashboard.
+	 * <p>
+	 * The totals paid, totals outstanding and project counts are printed overall, for each project
+	 * manager and for each building type. The user can then enter a customer name to see the
+	 * customer's totals. The totals are read from the receivables ledger, so the projects are not scanned.
+	 * <p>
+	 * @param userInput The Scanner used to input a customer name.
+	 */
+	public static void printDashboard(Scanner userInput) {
+		// Heading
+		System.out.println();
+		System.out.println("\t***Receivables Dashboard***\t");
+		System.out.println();
+		
+		System.out.println("All projects:\n " + receivablesLedger.getOverall());
+		System.out.println("\nBy project manager:");
+		for (Map.Entry<String, ReceivablesLedger.Totals> entry : receivablesLedger.getByProjectManager().entrySet()) {
+			System.out.println(" " + entry.getKey() + ":\t" + entry.getValue());
+		}
+		System.out.println("\nBy building type:");
+		for (Map.Entry<String, ReceivablesLedger.Totals> entry : receivablesLedger.getByBuildType().entrySet()) {
+			System.out.println(" " + entry.getKey() + ":\t" + entry.getValue());
+		}
+		
+		System.out.print("\nCustomer name (leave blank to return): ");
+		String customerName = userInput.nextLine().trim();
+		if (!customerName.equals("")) {
+			ReceivablesLedger.Totals totals = receivablesLedger.getByCustomer(customerName);
+			System.out.println((totals == null) ? "That customer has no projects." : customerName + ":\t" + totals);
+		}
+	}
+	
+	/**
+	 * Prints the projects for a project manager, contractor, architect or customer.
+	 * <p>
+	 * The user selects the type of person, enters the name and chooses whether only open
+	 * projects are printed. The projects are found with a project query, which reads them
+	 * from the project index when all projects are loaded. Otherwise the matching projects
+	 * are read from the database (or from each shard). If finalised projects are archived,
+	 * the matching archived projects are read from the database as well.
+	 * <p>
+	 * @param projects The array list of project objects.
+	 * @param userInput The Scanner used for the user to enter the selection.
+	 * @param statement The line to the database, used to read archived projects.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public static void printProjectsByPerson(ArrayList<Project> projects, Scanner userInput, Statement statement) throws SQLException {
+		// Heading
+		System.out.println();
+		System.out.println("\t***Projects by Person***\t");
+		System.out.println();
+		
+		// Fields for each type of person, in the same order as ProjectIndex.ROLES
+		ProjectQuery.Field[] fields = {ProjectQuery.Field.PROJECT_MANAGER, ProjectQuery.Field.CONTRACTOR,
+				ProjectQuery.Field.ARCHITECT, ProjectQuery.Field.CUSTOMER};
+		int roleChoice = 0;
+		while(roleChoice < 1 || roleChoice > fields.length) {
+			System.out.print("1 - Project Manager\n2 - Contractor\n3 - Architect\n4 - Customer\n\nPlease make your selection: ");
+			roleChoice = getMenuChoice(userInput, roleChoice);
+		}
+		String role = ProjectIndex.ROLES[roleChoice - 1];
+		
+		System.out.print(role + " name: ");
+		String name = userInput.nextLine().trim();
+		System.out.print("Only open projects (y/n): ");
+		boolean openOnly = userInput.nextLine().trim().equalsIgnoreCase("y");
+		
+		ProjectQuery query = new ProjectQuery().where(fields[roleChoice - 1], ProjectQuery.Operator.EQUALS, name);
+		if (openOnly) {
+			query.where(ProjectQuery.Field.COMPLETION_DATE, ProjectQuery.Operator.IS_NULL);
+		}
+		ArrayList<Project> matches = planViewQuery(query, projects, " WHERE projects." + fields[roleChoice - 1]
+				+ " = '" + name.replace("'", "''") + "'" + (openOnly ? " AND projects.completionDate IS NULL" : ""), statement).execute();
+		
+		// Prints the matching projects
+		loadContacts(matches);
+		for(Project counter: matches) {
+			System.out.println(counter);
+		}
+		// Print message if no projects were printed.
+		if(matches.size() == 0) {
+			System.out.println("\nThere are no projects for " + name + ".\n");
+		}
+	}
+	
+	/**
+	 * Prints the projects on the sites in a range of ERF numbers.
+	 * <p>
+	 * The user enters the lowest and highest ERF numbers (one number for a single site). The
+	 * ERF numbers are found in the sorted ERF index. The projects are found with a project query,
+	 * which reads them from the index when all projects are loaded. Otherwise they are read from
+	 * the database (or from each shard). If finalised projects are archived, the archived
+	 * projects in the range are read from the database as well.
+	 * If there are no sites in the range, the nearest ERF number is printed.
+	 * <p>
+	 * @param projects The array list of project objects.
+	 * @param userInput The Scanner used for the user to enter the range.
+	 * @param statement The line to the database, used to read archived projects.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public static void printProjectsByErf(ArrayList<Project> projects, Scanner userInput, Statement statement) throws SQLException {
+		// Heading
+		System.out.println();
+		System.out.println("\t***Projects by ERF Number***\t");
+		System.out.println();
+		
+		int from = -1, to = -1;
+		while(from < 0 || to < 0) {
+			try {
+				System.out.print("From ERF number: ");
+				from = Integer.parseInt(userInput.nextLine().trim());
+				System.out.print("To ERF number (leave blank for one site): ");
+				String toString = userInput.nextLine().trim();
+				to = toString.equals("") ? from : Integer.parseInt(toString);
+			}catch(NumberFormatException e) {
+				System.out.println("Error! Only integers are to be entered.");
+				from = -1;
+			}
+		}
+		
+		int[] erfNumbers = erfIndex.getRange(from, to);
+		if (erfNumbers.length == 0) {
+			int nearest = erfIndex.getNearest(from);
+			System.out.println("\nThere are no sites in that range." + ((nearest < 0) ? "" : " The nearest ERF number is " + nearest + ".") + "\n");
+			return;
+		}
+		
+		ProjectQuery query = new ProjectQuery().where(ProjectQuery.Field.ERF_NUM, ProjectQuery.Operator.BETWEEN, from, to);
+		ArrayList<Project> matches = planViewQuery(query, projects, " WHERE projects.ERFNUM BETWEEN " + from + " AND " + to,
+				statement).execute();
+		
+		// Prints the matching projects
+		loadContacts(matches);
+		for(Project counter: matches) {
+			System.out.println(counter);
+		}
+		System.out.println(erfNumbers.length + " sites, " + matches.size() + " projects.");
+	}
+	
+	/**
+	 * Runs a project query written by the user, and prints the matching projects.
+	 * <p>
+	 * The query is written as query text (see ProjectQuery.parse), e.g.
+	 * "where contractor = 'Bob Smith' and completionDate is null order by deadline desc limit 10".
+	 * If the query starts with "explain", the query plan is printed before the results. If the
+	 * query selects values, a table of the values is printed instead of the whole projects.
+	 * When all projects are not loaded, the conditions are run as a WHERE clause, so only the
+	 * matching projects are read from the database (or from each shard). A query without
+	 * conditions is then refused, as it would read every project. If finalised projects are
+	 * archived, the archived projects that meet the conditions are read from the database.
+	 * <p>
+	 * @param projects The array list of project objects.
+	 * @param userInput The Scanner used for the user to enter the query.
+	 * @param statement The line to the database, used to read archived projects.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public static void queryProjects(ArrayList<Project> projects, Scanner userInput, Statement statement) throws SQLException {
+		// Heading
+		System.out.println();
+		System.out.println("\t***Query Projects***\t");
+		System.out.println();
+		
+		System.out.println("Fields: projectNum, projectName, buildType, erfNum, address, totalFee, totalPaid, deadline,"
+				+ "\ncustomer, contractor, architect, projectManager, completionDate");
+		System.out.println("Example: [explain] where contractor = 'Bob Smith' and completionDate is null"
+				+ "\n         order by deadline desc limit 10 select projectNum, projectName, deadline");
+		System.out.print("\nQuery: ");
+		String text = userInput.nextLine().trim();
+		boolean explain = text.toLowerCase().startsWith("explain");
+		if (explain) {
+			text = text.substring(7);
+		}
+		
+		ProjectQuery query;
+		try {
+			query = ProjectQuery.parse(text);
+		}catch(IllegalArgumentException e) {
+			System.out.println("Error! " + e.getMessage());
+			return;
+		}
+		if ((projectShards != null || projectCache != null) && !query.hasConditions()) {
+			System.out.println("Error! Projects are read from the database, so a query must have a where clause.");
+			return;
+		}
+		QueryPlan plan = planViewQuery(query, projects, query.getSqlCondition(), statement);
+		if (explain) {
+			System.out.println("\n" + plan.explain() + "\n");
+		}
+		long start = System.nanoTime();
+		ArrayList<Project> matches = plan.execute();
+		long millis = (System.nanoTime() - start) / 1000000;
+		
+		// Prints the matching projects, or the selected values
+		if (query.hasSelect()) {
+			System.out.print(query.formatRows(matches));
+		}
+		else {
+			loadContacts(matches);
+			for(Project counter: matches) {
+				System.out.println(counter);
+			}
+		}
+		System.out.println(matches.size() + " projects in " + millis + " ms.");
+	}
+	
+	/**
+	 * Prints the history of changes made to a project, from the project journal.
+	 * <p>
+	 * Each change is listed with the time it was made and the value it replaced.
+	 * <p>
+	 * @param userInput The Scanner used for the user to enter the project number.
+	 * @throws IOException If the journal cannot be read.
+	 */
+	public static void printProjectHistory(Scanner userInput) throws IOException {
+		// Heading
+		System.out.println();
+		System.out.println("\t***Project History***\t");
+		System.out.println();
+		
+		if (projectJournal == null) {
+			System.out.println("The project journal is not enabled. Run the program with --journal=<directory>.");
+			return;
+		}
+		
+		int projectNum = 0;
+		while(projectNum == 0) {
+			System.out.print("Project number: ");
+			try {
+				projectNum = Integer.parseInt(userInput.nextLine());
+			}catch(NumberFormatException e) {
+				System.out.println("Error! Only integers are to be entered.");
+			}
+		}
+		
+		ArrayList<String> history = projectJournal.getHistory(projectNum);
+		for (String change : history) {
+			System.out.println(change);
+		}
+		// Print message if there are no changes
+		if(history.size() == 0) {
+			System.out.println("\nThere are no recorded changes for this project.\n");
+		}
+	}
+	
 }
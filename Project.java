@@ -1,13 +1,25 @@
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 
 /**
  * Class to create Project objects.
  * 
  * Project objects are managed by Poise class.
+ * <p>
+ * To keep the memory used by each project small, the deadline and completion date are
+ * stored as day numbers (days since 1970-01-01), the building type and project manager are
+ * stored as codes from shared string dictionaries, and the finalised status is stored as a
+ * flag. The getters convert the values back to the types passed to the constructor.
+ * <p>
+ * When the text arena is in use, projects are created as off-heap projects by the create
+ * method, which keep handles for the project name and address instead of the strings.
  * 
  * @author Lindsey
  * @see ProjectContact
@@ -16,20 +28,34 @@ import java.util.*;
  */
 public class Project {
 	
+	// Shared dictionaries for values repeated across projects
+	static final StringDictionary BUILD_TYPES = new StringDictionary();
+	static final StringDictionary PROJECT_MANAGERS = new StringDictionary();
+	
+	/* Off-heap store for the text values, used when the program is run with the --off-heap argument.
+	 * Must be set before any project is created, and only when all projects are loaded once (records
+	 * are never reclaimed, so objects must not be re-created for each view). Null when the text is kept on the heap.*/
+	static TextArena textArena = null;
+	
+	// Status flags
+	private static final byte FINALISED = 1;
+	
 	// ATTRIBUTES
 	final int PROJECTNUM;
-	final String ADDRESS;
-	String projectName;
-	final String BUILDTYPE;
+	// Text values - null for off-heap projects, which keep handles for the text arena
+	private final String ADDRESS;
+	private String projectName;
+	private final int buildTypeCode;
 	final int ERFNUM;
 	final double TOTALFEE;
 	double totalPaid;
-	Date deadline;
+	private int deadlineDay;
 	ProjectContact customer;
 	ProjectContact contractor;
 	ProjectContact architect;
-	String projectManager;
-	String completionDate;
+	private int projectManagerCode;
+	private int completionDay;
+	private byte flags;
 		
 	/**
 	 * Project object constructor
@@ -51,17 +77,61 @@ public class Project {
 	public Project(int projectNum, String projectName, String buildType, int ERFNum, String address, double totalFee, double totalPaid, Date deadline, ProjectContact customer, ProjectContact contractor, ProjectContact architect, String projectManager, String completionDate) {
 		this.PROJECTNUM = projectNum;
 		this.projectName = projectName;
-		this.BUILDTYPE = buildType;
+		this.buildTypeCode = BUILD_TYPES.encode(buildType);
 		this.ERFNUM = ERFNum;
 		this.ADDRESS = address;
 		this.TOTALFEE = totalFee;
 		this.totalPaid = totalPaid;
-		this.deadline = deadline;
+		setDeadline(deadline);
 		this.customer = customer;
 		this.contractor = contractor;
 		this.architect = architect;
-		this.projectManager = projectManager;
-		this.completionDate = completionDate;
+		setProjectManager(projectManager);
+		setCompletionDate(completionDate);
+	}
+	
+	/**
+	 * Project object copy constructor.
+	 * <p>
+	 * The project contact objects are shared, as they are not changed once created.
+	 * @param project - The project object to copy.
+	 */
+	private Project(Project project) {
+		this.PROJECTNUM = project.PROJECTNUM;
+		this.projectName = project.projectName;
+		this.buildTypeCode = project.buildTypeCode;
+		this.ERFNUM = project.ERFNUM;
+		this.ADDRESS = project.ADDRESS;
+		this.TOTALFEE = project.TOTALFEE;
+		this.totalPaid = project.totalPaid;
+		this.deadlineDay = project.deadlineDay;
+		this.customer = project.customer;
+		this.contractor = project.contractor;
+		this.architect = project.architect;
+		this.projectManagerCode = project.projectManagerCode;
+		this.completionDay = project.completionDay;
+		this.flags = project.flags;
+	}
+	
+	/**
+	 * Creates a project object, with its text in the text arena if it is in use.
+	 * <p>
+	 * The parameters are the same as for the constructor.
+	 * @return The project object, or an off-heap project object if the text arena is in use.
+	 */
+	public static Project create(int projectNum, String projectName, String buildType, int ERFNum, String address, double totalFee, double totalPaid, Date deadline, ProjectContact customer, ProjectContact contractor, ProjectContact architect, String projectManager, String completionDate) {
+		if (textArena != null) {
+			return new OffHeapProject(projectNum, projectName, buildType, ERFNum, address, totalFee, totalPaid, deadline, customer, contractor, architect, projectManager, completionDate);
+		}
+		return new Project(projectNum, projectName, buildType, ERFNum, address, totalFee, totalPaid, deadline, customer, contractor, architect, projectManager, completionDate);
+	}
+	
+	/**
+	 * Creates a copy of the project object, e.g. for a snapshot that must not see later changes.
+	 * @return A new project object with the same values.
+	 */
+	public Project copy() {
+		return new Project(this);
 	}
 	
 	/**
@@ -77,7 +147,7 @@ public class Project {
 	 * @return The project building type string value.
 	 */
 	public String getBuildType() {
-		return BUILDTYPE;
+		return BUILD_TYPES.decode(buildTypeCode);
 	}
 
 	/**
@@ -125,7 +195,7 @@ public class Project {
 	 * @param deadline The date value to be set as the project's deadline value.
 	 */
 	public void setDeadline(Date deadline) {
-		this.deadline = deadline;
+		this.deadlineDay = toDay(deadline);
 	}
 
 	/**
@@ -133,7 +203,15 @@ public class Project {
 	 * @return The project deadline Date value.
 	 */
 	public Date getDeadline() {
-		return deadline;
+		return Date.from(LocalDate.ofEpochDay(deadlineDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+	
+	/**
+	 * Gets the project deadline as a day number.
+	 * @return The number of days from 1970-01-01 to the deadline.
+	 */
+	public int getDeadlineDay() {
+		return deadlineDay;
 	}
 
 	/**
@@ -189,7 +267,7 @@ public class Project {
 	 * @return The string value to be set as the project manager.
 	 */
 	public String getProjectManager() {
-		return projectManager;
+		return PROJECT_MANAGERS.decode(projectManagerCode);
 	}
 	
 	/**
@@ -197,23 +275,119 @@ public class Project {
 	 * @param projectManager The string value to be set as the project manager.
 	 */
 	public void setProjectManager(String projectManager) {
-		this.projectManager = projectManager;
+		this.projectManagerCode = PROJECT_MANAGERS.encode(projectManager);
 	}
 
 	/**
 	 * Sets the project completion date string value.
-	 * @param completionDate The string value to be set as the completion date.
+	 * @param completionDate The string value to be set as the completion date, in the format "yyyy-MM-dd".
+	 * Null if the project is not finalised.
 	 */
 	public void setCompletionDate(String completionDate) {
-		this.completionDate = completionDate;
+		if (completionDate == null) {
+			flags &= ~FINALISED;
+			completionDay = 0;
+		}
+		else {
+			flags |= FINALISED;
+			// Only the date part is kept if a time is included
+			completionDay = (int) LocalDate.parse(completionDate.substring(0, 10)).toEpochDay();
+		}
 	}
 	
 	/**
 	 * Gets the completion date string value.
-	 * @return The completion date string value.
+	 * @return The completion date string value, or null if the project is not finalised.
 	 */
 	public String getCompletionDate() {
-		return completionDate;
+		return isFinalised() ? LocalDate.ofEpochDay(completionDay).toString() : null;
+	}
+	
+	/**
+	 * Checks if the project has been finalised.
+	 * @return True if the project has a completion date.
+	 */
+	public boolean isFinalised() {
+		return (flags & FINALISED) != 0;
+	}
+	
+	/**
+	 * Converts a Date value to a day number, using the system time zone.
+	 * @param date The date value.
+	 * @return The number of days from 1970-01-01 to the date.
+	 */
+	static int toDay(Date date) {
+		return (int) new java.sql.Date(date.getTime()).toLocalDate().toEpochDay();
+	}
+
+	/**
+	 * Writes the project attributes to a data output, e.g. a journal or snapshot file.
+	 * <p>
+	 * The values are written in the same order as the constructor parameters.
+	 * @param out The data output to write to.
+	 * @throws IOException If the project cannot be written.
+	 * @see readFrom
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(PROJECTNUM);
+		writeString(out, getProjectName());
+		writeString(out, getBuildType());
+		out.writeInt(ERFNUM);
+		writeString(out, getAddress());
+		out.writeDouble(TOTALFEE);
+		out.writeDouble(totalPaid);
+		out.writeLong(getDeadline().getTime());
+		customer.writeTo(out);
+		contractor.writeTo(out);
+		architect.writeTo(out);
+		writeString(out, getProjectManager());
+		writeString(out, getCompletionDate());
+	}
+	
+	/**
+	 * Reads a project object that was written by the writeTo method.
+	 * @param in The data input to read from.
+	 * @return The project object.
+	 * @throws IOException If the project cannot be read.
+	 */
+	public static Project readFrom(DataInput in) throws IOException {
+		int projectNum = in.readInt();
+		String projectName = readString(in);
+		String buildType = readString(in);
+		int ERFNum = in.readInt();
+		String address = readString(in);
+		double totalFee = in.readDouble();
+		double totalPaid = in.readDouble();
+		Date deadline = new Date(in.readLong());
+		ProjectContact customer = ProjectContact.readFrom(in);
+		ProjectContact contractor = ProjectContact.readFrom(in);
+		ProjectContact architect = ProjectContact.readFrom(in);
+		String projectManager = readString(in);
+		String completionDate = readString(in);
+		return create(projectNum, projectName, buildType, ERFNum, address, totalFee, totalPaid, deadline, customer, contractor, architect, projectManager, completionDate);
+	}
+	
+	/**
+	 * Writes a string value which may be null.
+	 * @param out The data output to write to.
+	 * @param value The string value.
+	 * @throws IOException If the value cannot be written.
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+	
+	/**
+	 * Reads a string value written by the writeString method.
+	 * @param in The data input to read from.
+	 * @return The string value, or null.
+	 * @throws IOException If the value cannot be read.
+	 */
+	static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
 	}
 
 	/**
@@ -223,13 +397,12 @@ public class Project {
 	 * and formats it to a reader-friendly format.
 	 */
 	public String toString() {
-		String output = "----  Project: " + projectName +"  ----";
+		String output = "----  Project: " + getProjectName() +"  ----";
 		output += "\nProject Number:\t\t" + PROJECTNUM;
-		output += "\nBuilding Type:\t\t" + BUILDTYPE;
+		output += "\nBuilding Type:\t\t" + getBuildType();
 		output += "\nERF Number:\t\t" + ERFNUM;
-		output += "\nPhys. Address:\t\t" + ADDRESS;
-		SimpleDateFormat dateformatter = new SimpleDateFormat("yyyy-MM-dd");
-		output += "\nDeadline:\t\t" + dateformatter.format(deadline);
+		output += "\nPhys. Address:\t\t" + getAddress();
+		output += "\nDeadline:\t\t" + LocalDate.ofEpochDay(deadlineDay);
 		DecimalFormat decimalFormat = new DecimalFormat("#.00", DecimalFormatSymbols.getInstance(Locale.US));
 		output += "\nTotal Fee:\t\tR " + decimalFormat.format(TOTALFEE);
 		output += "\nTotal Paid:\t\tR " + decimalFormat.format(totalPaid) +"\n";
@@ -237,12 +410,57 @@ public class Project {
 		output += contractor + "\n";
 		output += architect + "\n";
 		// Add completion date to string if the project has been finalised
-		if (completionDate == null){
+		if (!isFinalised()){
 			output += "\n";
 		}
 		else {
-			output += "\nCompleted:\t\t" + completionDate;
+			output += "\nCompleted:\t\t" + getCompletionDate();
 		}
 		return output; 
 	}
+	
+	/**
+	 * Class for projects with their text in the text arena.
+	 * <p>
+	 * The project name and address are stored in the arena, and only their handles are kept,
+	 * so projects that do not use the arena have no handle fields.
+	 */
+	private static class OffHeapProject extends Project {
+		
+		// Handles for the text arena
+		private final long addressText;
+		private long projectNameText;
+		
+		private OffHeapProject(int projectNum, String projectName, String buildType, int ERFNum, String address, double totalFee, double totalPaid, Date deadline, ProjectContact customer, ProjectContact contractor, ProjectContact architect, String projectManager, String completionDate) {
+			super(projectNum, null, buildType, ERFNum, null, totalFee, totalPaid, deadline, customer, contractor, architect, projectManager, completionDate);
+			this.addressText = textArena.put(address);
+			this.projectNameText = textArena.put(projectName);
+		}
+		
+		private OffHeapProject(OffHeapProject project) {
+			super(project);
+			this.addressText = project.addressText;
+			this.projectNameText = project.projectNameText;
+		}
+		
+		@Override
+		public Project copy() {
+			return new OffHeapProject(this);
+		}
+		
+		@Override
+		public String getAddress() {
+			return textArena.get(addressText);
+		}
+		
+		@Override
+		public void setProjectName(String projectName) {
+			this.projectNameText = textArena.put(projectName);
+		}
+		
+		@Override
+		public String getProjectName() {
+			return textArena.get(projectNameText);
+		}
+	}
 }
@@ -0,0 +1,362 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Class to create a Project Archive object.
+ * <p>
+ * The project archive keeps finalised projects on disk instead of in memory, so only the open
+ * projects need to be loaded and searched. Finalised projects are written in blocks of up to
+ * 128 projects, and each block is compressed. The archive is made of three files in its directory:
+ * <ul>
+ * <li>archive.dat - the compressed blocks, one after another.</li>
+ * <li>archive.idx - the archived project numbers in order, the block each project is in, and the
+ * position of each block in archive.dat.</li>
+ * <li>archive.names - the hash of each archived project name (in lower case) with the project
+ * number, in hash order.</li>
+ * </ul>
+ * A project is found by number with a binary search of the index and by reading one block.
+ * A project is found by name with a binary search of the name hashes, and by reading the block
+ * of each project with the hash until the name matches. The last block read is kept, so projects
+ * that are near each other are read quickly. Archived projects are finalised, so they are not
+ * changed.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class ProjectArchive implements AutoCloseable {
+
+	// Maximum number of projects in one block
+	private static final int BLOCK_SIZE = 128;
+	// Maximum number of project numbers in one IN (...) list
+	private static final int BATCH_SIZE = 500;
+
+	// ATTRIBUTES
+	private final Path indexPath;
+	private final Path namesPath;
+	private final FileChannel data;
+	// Archived project numbers in order, and the block each is in
+	private int[] projectNums = new int[0];
+	private int[] projectBlocks = new int[0];
+	// Position of each block in the data file
+	private long[] blockOffsets = new long[0];
+	// Name hash (high 32 bits) and project number (low 32 bits) of each archived project, in order
+	private long[] nameEntries = new long[0];
+	// Last block read
+	private int cachedBlock = -1;
+	private ArrayList<Project> cachedProjects = null;
+
+	/**
+	 * Project Archive constructor.
+	 * <p>
+	 * Opens the archive in the directory, creating it if it does not exist. If the name index is
+	 * missing or does not match the index, it is built again from the blocks.
+	 * @param directory The directory for the archive files.
+	 * @throws IOException If the archive cannot be opened.
+	 */
+	public ProjectArchive(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		indexPath = directory.resolve("archive.idx");
+		data = FileChannel.open(directory.resolve("archive.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (Files.exists(indexPath)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+				int count = in.readInt();
+				projectNums = new int[count];
+				projectBlocks = new int[count];
+				for (int i = 0; i < count; i++) {
+					projectNums[i] = in.readInt();
+					projectBlocks[i] = in.readInt();
+				}
+				blockOffsets = new long[in.readInt()];
+				for (int i = 0; i < blockOffsets.length; i++) {
+					blockOffsets[i] = in.readLong();
+				}
+			}
+		}
+		namesPath = directory.resolve("archive.names");
+		if (Files.exists(namesPath)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(namesPath)))) {
+				nameEntries = new long[in.readInt()];
+				for (int i = 0; i < nameEntries.length; i++) {
+					nameEntries[i] = in.readLong();
+				}
+			}
+		}
+		if (nameEntries.length != projectNums.length) {
+			int[] hashes = new int[projectNums.length];
+			int[] nums = new int[projectNums.length];
+			int count = 0;
+			for (int block = 0; block < blockOffsets.length; block++) {
+				for (Project project : readBlock(block)) {
+					hashes[count] = project.getProjectName().toLowerCase().hashCode();
+					nums[count++] = project.getProjectNum();
+				}
+			}
+			nameEntries = new long[0];
+			mergeNames(hashes, nums, count);
+			writeNames();
+		}
+	}
+
+	/**
+	 * Archives the finalised projects in the database that are not archived yet.
+	 * <p>
+	 * Only the numbers of the finalised projects are read first. The full rows are then read
+	 * for the projects that are new to the archive, in batches.
+	 * @param statement The line to the database for running queries.
+	 * @return The number of projects added to the archive.
+	 * @throws SQLException If a database error occurs.
+	 * @throws IOException If the archive cannot be written.
+	 */
+	public synchronized int update(Statement statement) throws SQLException, IOException {
+		ArrayList<Integer> newNums = new ArrayList<>();
+		ResultSet results = statement.executeQuery("SELECT PROJECTNUM FROM projects WHERE completionDate IS NOT NULL");
+		while (results.next()) {
+			int projectNum = results.getInt(1);
+			if (Arrays.binarySearch(projectNums, projectNum) < 0) {
+				newNums.add(projectNum);
+			}
+		}
+		results.close();
+		if (newNums.isEmpty()) {
+			return 0;
+		}
+		Collections.sort(newNums);
+
+		ArrayList<Project> block = new ArrayList<>(BLOCK_SIZE);
+		// New index entries, which are in project number order as the rows are read in order
+		int[] nums = new int[newNums.size()];
+		int[] blocks = new int[newNums.size()];
+		int[] hashes = new int[newNums.size()];
+		int archived = 0;
+		for (int start = 0; start < newNums.size(); start += BATCH_SIZE) {
+			List<Integer> batch = newNums.subList(start, Math.min(newNums.size(), start + BATCH_SIZE));
+			StringBuilder numbers = new StringBuilder();
+			for (int projectNum : batch) {
+				numbers.append((numbers.length() == 0) ? "" : ", ").append(projectNum);
+			}
+			results = statement.executeQuery(Poise.getProjectQuery() + " WHERE projects.PROJECTNUM IN ("
+					+ numbers + ") ORDER BY projects.PROJECTNUM");
+			while (results.next()) {
+				block.add(Poise.createProject(results));
+				if (block.size() == BLOCK_SIZE) {
+					Poise.loadContacts(block);
+					archived = writeBlock(block, nums, blocks, hashes, archived);
+					block.clear();
+				}
+			}
+			results.close();
+		}
+		if (!block.isEmpty()) {
+			Poise.loadContacts(block);
+			archived = writeBlock(block, nums, blocks, hashes, archived);
+		}
+		data.force(false);
+		mergeIndex(nums, blocks, archived);
+		mergeNames(hashes, nums, archived);
+		writeNames();
+		writeIndex();
+		return archived;
+	}
+
+	/**
+	 * Gets the archived project with the project number.
+	 * @param projectNum The project number to search for.
+	 * @return The project object, or null if the project is not archived.
+	 * @throws IOException If the archive cannot be read.
+	 */
+	public synchronized Project getProject(int projectNum) throws IOException {
+		int position = Arrays.binarySearch(projectNums, projectNum);
+		if (position < 0) {
+			return null;
+		}
+		for (Project project : readBlock(projectBlocks[position])) {
+			if (project.getProjectNum() == projectNum) {
+				return project;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the archived project with the project name (not case sensitive).
+	 * <p>
+	 * Only the blocks of the projects whose names have the same hash are read.
+	 * @param projectName The project name to search for.
+	 * @return The project object, or null if no archived project has the name.
+	 * @throws IOException If the archive cannot be read.
+	 */
+	public synchronized Project getProject(String projectName) throws IOException {
+		int hash = projectName.toLowerCase().hashCode();
+		int position = Arrays.binarySearch(nameEntries, (long) hash << 32);
+		for (position = (position < 0) ? -position - 1 : position;
+				position < nameEntries.length && (int) (nameEntries[position] >> 32) == hash; position++) {
+			Project project = getProject((int) nameEntries[position]);
+			if (project != null && projectName.equalsIgnoreCase(project.getProjectName())) {
+				return project;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if a project is in the archive.
+	 * @param projectNum The project number.
+	 * @return True if the project is archived.
+	 */
+	public synchronized boolean contains(int projectNum) {
+		return Arrays.binarySearch(projectNums, projectNum) >= 0;
+	}
+
+	/**
+	 * Gets the number of archived projects.
+	 * @return The number of projects in the archive.
+	 */
+	public synchronized int size() {
+		return projectNums.length;
+	}
+
+	/**
+	 * Closes the archive data file.
+	 * @throws IOException If the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		data.close();
+	}
+
+	/**
+	 * Compresses a block of projects and adds it to the end of the data file.
+	 * <p>
+	 * The project numbers, the block number and the name hashes are added to the new index entries.
+	 * @return The number of new index entries.
+	 */
+	private int writeBlock(List<Project> block, int[] nums, int[] blocks, int[] hashes, int count) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+			out.writeInt(block.size());
+			for (Project project : block) {
+				project.writeTo(out);
+			}
+		}
+		long offset = data.size();
+		ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.size());
+		buffer.putInt(bytes.size()).put(bytes.toByteArray()).flip();
+		while (buffer.hasRemaining()) {
+			data.write(buffer, offset + buffer.position());
+		}
+
+		int blockNum = blockOffsets.length;
+		blockOffsets = Arrays.copyOf(blockOffsets, blockNum + 1);
+		blockOffsets[blockNum] = offset;
+		for (Project project : block) {
+			nums[count] = project.getProjectNum();
+			blocks[count] = blockNum;
+			hashes[count] = project.getProjectName().toLowerCase().hashCode();
+			count += 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads and decompresses a block, or returns it if it was the last block read.
+	 */
+	private ArrayList<Project> readBlock(int block) throws IOException {
+		if (block == cachedBlock) {
+			return cachedProjects;
+		}
+		ByteBuffer length = ByteBuffer.allocate(4);
+		data.read(length, blockOffsets[block]);
+		ByteBuffer compressed = ByteBuffer.allocate(length.flip().getInt());
+		while (compressed.hasRemaining()) {
+			if (data.read(compressed, blockOffsets[block] + 4 + compressed.position()) < 0) {
+				throw new EOFException("The archive block " + block + " is incomplete.");
+			}
+		}
+		ArrayList<Project> projects;
+		try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed.array())))) {
+			int count = in.readInt();
+			projects = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				projects.add(Project.readFrom(in));
+			}
+		}
+		cachedBlock = block;
+		cachedProjects = projects;
+		return projects;
+	}
+
+	/**
+	 * Writes the index to a temporary file, then replaces the index file.
+	 */
+	private void writeIndex() throws IOException {
+		Path temporary = indexPath.resolveSibling("archive.idx.tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(projectNums.length);
+			for (int i = 0; i < projectNums.length; i++) {
+				out.writeInt(projectNums[i]);
+				out.writeInt(projectBlocks[i]);
+			}
+			out.writeInt(blockOffsets.length);
+			for (long offset : blockOffsets) {
+				out.writeLong(offset);
+			}
+		}
+		Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Adds the name hashes of new projects to the name index, and sorts it.
+	 */
+	private void mergeNames(int[] hashes, int[] nums, int count) {
+		int start = nameEntries.length;
+		nameEntries = Arrays.copyOf(nameEntries, start + count);
+		for (int i = 0; i < count; i++) {
+			nameEntries[start + i] = ((long) hashes[i] << 32) | nums[i];
+		}
+		Arrays.sort(nameEntries);
+	}
+
+	/**
+	 * Writes the name index to a temporary file, then replaces the name index file.
+	 */
+	private void writeNames() throws IOException {
+		Path temporary = namesPath.resolveSibling("archive.names.tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(nameEntries.length);
+			for (long entry : nameEntries) {
+				out.writeLong(entry);
+			}
+		}
+		Files.move(temporary, namesPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Merges the new index entries (in project number order) into the index.
+	 */
+	private void mergeIndex(int[] newNums, int[] newBlocks, int count) {
+		int[] nums = new int[projectNums.length + count];
+		int[] blocks = new int[nums.length];
+		int i = 0, j = 0;
+		for (int k = 0; k < nums.length; k++) {
+			if (j == count || (i < projectNums.length && projectNums[i] < newNums[j])) {
+				nums[k] = projectNums[i];
+				blocks[k] = projectBlocks[i];
+				i += 1;
+			}
+			else {
+				nums[k] = newNums[j];
+				blocks[k] = newBlocks[j];
+				j += 1;
+			}
+		}
+		projectNums = nums;
+		projectBlocks = blocks;
+	}
+}
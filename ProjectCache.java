@@ -0,0 +1,227 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Class to create a bounded Project Cache object.
+ * <p>
+ * The project cache is used in place of the full list of project objects, for
+ * databases with more projects than should be held in memory. Only the most recently
+ * used projects are kept. When the cache is full, the least recently used project
+ * is evicted to make space for the next one.
+ * <p>
+ * Lookups by project number or project name that are not in the cache are read from
+ * the poisePMS database, using the primary key (or the project name) in a WHERE clause.
+ * Updates are written to the database by the Poise class before the cached project
+ * objects are changed, so the cache never holds values that are not in the database.
+ * The cache is told when a project is finalised, so the project is found by its new name.
+ *
+ * @author Lindsey
+ * @see Project
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ProjectCache implements ProjectListener {
+
+	// ATTRIBUTES
+	private final Statement statement;
+	private final int maxProjects;
+	private final LinkedHashMap<Integer, Project> projects;
+	// The same projects by number, for lookups that do not change the access order
+	private final HashMap<Integer, Project> projectNums = new HashMap<>();
+	private final HashMap<String, Project> projectNames = new HashMap<>();
+	private long hits, misses, evictions;
+
+	/**
+	 * Project Cache constructor.
+	 *
+	 * @param statement The line to the database for running queries on a cache miss.
+	 * @param maxProjects The maximum number of project objects held in the cache.
+	 */
+	public ProjectCache(Statement statement, int maxProjects) {
+		this.statement = statement;
+		this.maxProjects = maxProjects;
+		// Access order is used so that the eldest entry is the least recently used project
+		this.projects = new LinkedHashMap<Integer, Project>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Project> eldest) {
+				if (size() > ProjectCache.this.maxProjects) {
+					projectNums.remove(eldest.getKey());
+					projectNames.remove(eldest.getValue().getProjectName().toLowerCase(), eldest.getValue());
+					evictions += 1;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets the project object with the project number.
+	 * <p>
+	 * If the project is not in the cache, it is read from the database and added to the cache.
+	 * @param projectNum The project number to search for.
+	 * @return The project object, or null if the project does not exist.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public Project getProject(int projectNum) throws SQLException {
+		Project project = projects.get(projectNum);
+		if (project != null) {
+			hits += 1;
+			return project;
+		}
+		misses += 1;
+		return load(" WHERE projects.PROJECTNUM = '" + projectNum + "'");
+	}
+
+	/**
+	 * Gets the project object with the project name (not case sensitive).
+	 * <p>
+	 * If the project is not in the cache, it is read from the database and added to the cache.
+	 * @param projectName The project name to search for.
+	 * @return The project object, or null if the project does not exist.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public Project getProject(String projectName) throws SQLException {
+		String key = projectName.toLowerCase();
+		Project project = projectNames.get(key);
+		// Names change when a project is finalised, so the entry is checked before it is used
+		if (project != null && project.getProjectName().equalsIgnoreCase(projectName)) {
+			hits += 1;
+			// Refresh the access order of the project
+			projects.get(project.getProjectNum());
+			return project;
+		}
+		projectNames.remove(key);
+		misses += 1;
+		return load(" WHERE projects.projectName = '" + projectName.replace("'", "''") + "'");
+	}
+
+	/**
+	 * Adds a project object to the cache, for new projects that have been added to the database.
+	 * @param project The project object to be cached.
+	 */
+	public void put(Project project) {
+		projects.put(project.getProjectNum(), project);
+		projectNums.put(project.getProjectNum(), project);
+		projectNames.put(project.getProjectName().toLowerCase(), project);
+	}
+
+	/**
+	 * Gets the project objects that are currently in the cache.
+	 * @return A list of the cached project objects.
+	 */
+	public ArrayList<Project> getCachedProjects() {
+		return new ArrayList<>(projects.values());
+	}
+
+	/**
+	 * Gets a list of the project objects which match a condition, for viewing.
+	 * <p>
+	 * The projects are read from the database (a read replica if replicas are in use). Cached project
+	 * objects are used where they exist, but they are not marked as recently used, and projects that are
+	 * not cached are not added, so that a view does not change which projects are evicted.
+	 * @param condition The WHERE clause used to select the projects.
+	 * @return The list of matching project objects.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public ArrayList<Project> getProjects(String condition) throws SQLException {
+		ArrayList<Project> matches = new ArrayList<>();
+		ResultSet results = Poise.getReadStatement(statement).executeQuery(Poise.getProjectQuery() + condition);
+		while (results.next()) {
+			Project cached = projectNums.get(results.getInt("projects.PROJECTNUM"));
+			matches.add(cached != null ? cached : Poise.createProject(results));
+		}
+		results.close();
+		return matches;
+	}
+
+	/**
+	 * Reads the first project matching the condition from the database, and caches it.
+	 * @param condition The WHERE clause used to select the project.
+	 * @return The project object, or null if there was no match.
+	 * @throws SQLException If a database error occurs.
+	 */
+	private Project load(String condition) throws SQLException {
+		Project project = null;
+		ResultSet results = statement.executeQuery(Poise.getProjectQuery() + condition);
+		if (results.next()) {
+			project = Poise.createProject(results);
+			put(project);
+		}
+		results.close();
+		return project;
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public void projectAdded(Project project) {
+		// New projects are put in the cache when they are added
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		// Deadlines are not used as keys
+	}
+
+	@Override
+	public void paymentAdded(Project project, double payment) {
+		// Payments are not used as keys
+	}
+
+	@Override
+	public void contractorReplaced(Project project, ProjectContact oldContractor) {
+		// Contractors are not used as keys
+	}
+
+	@Override
+	public void projectFinalised(Project project, String oldProjectName) {
+		// The project is kept under its new name, so the old name does not hold it after it is evicted
+		if (projectNames.remove(oldProjectName.toLowerCase(), project)) {
+			projectNames.put(project.getProjectName().toLowerCase(), project);
+		}
+	}
+
+	/**
+	 * Gets the number of lookups found in the cache.
+	 * @return The number of cache hits.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups that were read from the database.
+	 * @return The number of cache misses.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of projects removed from the cache to make space for other projects.
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Overrides the toString method.
+	 * <p>
+	 * Builds a string with the cache size and statistics.
+	 */
+	public String toString() {
+		long lookups = hits + misses;
+		String output = "Project cache: " + projects.size() + "/" + maxProjects + " projects";
+		output += "\nHits: " + hits + "\tMisses: " + misses + "\tEvictions: " + evictions;
+		if (lookups > 0) {
+			output += "\nHit rate: " + (hits * 100 / lookups) + "%";
+		}
+		return output;
+	}
+}
@@ -1,9 +1,15 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Class to create a Project Contact object.
  * <p>
  * Project Contact objects are attributes for Project objects.
  * Project Contact objects and Project objects are managed by the Poise class.
+ * <p>
+ * When the text arena is in use, project contacts are created as off-heap project contacts by
+ * the create method, which keep one handle for the name, phone, e-mail and address.
  * 
  * @author Lindsey
  * @see Project
@@ -11,7 +17,10 @@
  */
 public class ProjectContact {
 	
-	String contact, contactName, phone, email, contactAddress;
+	// The contact type is one of a few values, so it is always kept on the heap
+	private final String contact;
+	// Null for off-heap project contacts
+	private final String contactName, phone, email, contactAddress;
 	
 	/**
 	 * Project Contact constructor.
@@ -29,6 +38,19 @@ public class ProjectContact {
 		this.contactAddress = contactAddress;
 	}
 
+	/**
+	 * Creates a project contact object, with its text in the text arena if it is in use.
+	 * <p>
+	 * The parameters are the same as for the constructor.
+	 * @return The project contact object, or an off-heap project contact object if the text arena is in use.
+	 */
+	public static ProjectContact create(String contact, String contactName, String phone, String email, String contactAddress) {
+		if (Project.textArena != null) {
+			return new OffHeapProjectContact(contact, contactName, phone, email, contactAddress);
+		}
+		return new ProjectContact(contact, contactName, phone, email, contactAddress);
+	}
+
 	/**
 	 * Gets project contact type string value.
 	 * @return Project Contact object string value.
@@ -69,6 +91,30 @@ public class ProjectContact {
 		return contactAddress;
 	}
 
+	/**
+	 * Writes the project contact attributes to a data output.
+	 * @param out The data output to write to.
+	 * @throws IOException If the project contact cannot be written.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		Project.writeString(out, contact);
+		Project.writeString(out, getContactName());
+		Project.writeString(out, getPhone());
+		Project.writeString(out, getEmail());
+		Project.writeString(out, getContactAddress());
+	}
+	
+	/**
+	 * Reads a project contact object that was written by the writeTo method.
+	 * @param in The data input to read from.
+	 * @return The project contact object.
+	 * @throws IOException If the project contact cannot be read.
+	 */
+	public static ProjectContact readFrom(DataInput in) throws IOException {
+		return create(Project.readString(in), Project.readString(in), Project.readString(in),
+				Project.readString(in), Project.readString(in));
+	}
+
 	/**
 	 * Overrides toString method.
 	 * <p>
@@ -77,10 +123,47 @@ public class ProjectContact {
 	 */
 	public String toString() {
 		String output = "\n> " + contact +":";
-		output += "\n Name: \t\t" + contactName;
-		output += "\n Phone: \t" + phone;
-		output += "\n E-mail: \t" + email;
-		output += "\n Address: \t" + contactAddress;
+		output += "\n Name: \t\t" + getContactName();
+		output += "\n Phone: \t" + getPhone();
+		output += "\n E-mail: \t" + getEmail();
+		output += "\n Address: \t" + getContactAddress();
 		return output;
 	}
+
+	/**
+	 * Class for project contacts with their text in the text arena.
+	 * <p>
+	 * The name, phone, e-mail and address are stored as one record in the arena, and only
+	 * its handle is kept, so project contacts that do not use the arena have no handle field.
+	 */
+	private static class OffHeapProjectContact extends ProjectContact {
+
+		// Handle for the name, phone, e-mail and address in the text arena
+		private final long contactText;
+
+		private OffHeapProjectContact(String contact, String contactName, String phone, String email, String contactAddress) {
+			super(contact, null, null, null, null);
+			this.contactText = Project.textArena.put(contactName, phone, email, contactAddress);
+		}
+
+		@Override
+		public String getContactName() {
+			return Project.textArena.get(contactText, 0);
+		}
+
+		@Override
+		public String getPhone() {
+			return Project.textArena.get(contactText, 1);
+		}
+
+		@Override
+		public String getEmail() {
+			return Project.textArena.get(contactText, 2);
+		}
+
+		@Override
+		public String getContactAddress() {
+			return Project.textArena.get(contactText, 3);
+		}
+	}
 }
@@ -0,0 +1,198 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class to create a Project Exporter object.
+ * <p>
+ * The project exporter writes every project to a CSV file or a JSON-lines file (one JSON
+ * object per line), optionally compressed with gzip. The rows are read from the same query
+ * used to load the projects, with a forward-only result set, and each row is written as soon
+ * as it is read. No project objects are created, so the memory used does not depend on the
+ * number of projects.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class ProjectExporter {
+
+	// Rows requested from the database at a time, for drivers that do not support streaming
+	private static final int FETCH_SIZE = 1000;
+
+	// Column labels in the project query, and the matching field names in the export
+	private static final String[] COLUMNS = {"projects.PROJECTNUM", "projects.projectName", "projects.BUILDTYPE",
+			"projects.ERFNUM", "sites.Address", "projects.TOTALFEE", "projects.totalPaid", "projects.deadline",
+			"projects.customer", "customers.Telephone", "customers.Email", "customers.Address",
+			"projects.contractor", "contractors.Telephone", "contractors.Email", "contractors.Address",
+			"projects.architect", "architects.Telephone", "architects.Email", "architects.Address",
+			"projects.projectManager", "projects.completionDate"};
+	private static final String[] FIELDS = {"projectNum", "projectName", "buildType", "erfNum", "address",
+			"totalFee", "totalPaid", "deadline", "customer", "customerPhone", "customerEmail", "customerAddress",
+			"contractor", "contractorPhone", "contractorEmail", "contractorAddress", "architect", "architectPhone",
+			"architectEmail", "architectAddress", "projectManager", "completionDate"};
+	// Fields written as JSON numbers rather than strings
+	private static final Set<String> NUMBER_FIELDS = new HashSet<>(Arrays.asList("projectNum", "erfNum", "totalFee", "totalPaid"));
+
+	// ATTRIBUTES
+	private final boolean json;
+	private final boolean gzip;
+
+	/**
+	 * Project Exporter constructor.
+	 * @param json True to write JSON lines, false to write CSV.
+	 * @param gzip True to compress the file with gzip.
+	 */
+	public ProjectExporter(boolean json, boolean gzip) {
+		this.json = json;
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Exports the projects from each database to the file.
+	 * @param connections The connections to the databases to export (one, or each shard).
+	 * @param file The file to write.
+	 * @return The number of projects exported.
+	 * @throws SQLException If a database error occurs.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public long export(List<Connection> connections, Path file) throws SQLException, IOException {
+		long count = 0;
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+		if (gzip) {
+			stream = new GZIPOutputStream(stream, 64 * 1024);
+		}
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024)) {
+			if (!json) {
+				writer.write(String.join(",", FIELDS));
+				writer.write("\n");
+			}
+			for (Connection connection : connections) {
+				count += exportRows(connection, writer);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Streams the project rows from one database to the writer.
+	 */
+	private long exportRows(Connection connection, Writer writer) throws SQLException, IOException {
+		long count = 0;
+		try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			try {
+				// MySQL only streams rows one at a time with this fetch size
+				statement.setFetchSize(Integer.MIN_VALUE);
+			} catch (SQLException e) {
+				statement.setFetchSize(FETCH_SIZE);
+			}
+			try (ResultSet results = statement.executeQuery(Poise.getFullProjectQuery())) {
+				while (results.next()) {
+					if (json) {
+						writeJson(results, writer);
+					}
+					else {
+						writeCsv(results, writer);
+					}
+					count += 1;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the current row as a CSV line.
+	 */
+	private static void writeCsv(ResultSet results, Writer writer) throws SQLException, IOException {
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			String value = results.getString(COLUMNS[i]);
+			if (value == null) {
+				continue;
+			}
+			// Quote values that contain separators, quotes or line breaks
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+			}
+			else {
+				writer.write(value);
+			}
+		}
+		writer.write('\n');
+	}
+
+	/**
+	 * Writes the current row as a JSON object on one line.
+	 */
+	private static void writeJson(ResultSet results, Writer writer) throws SQLException, IOException {
+		writer.write('{');
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			writer.write('"');
+			writer.write(FIELDS[i]);
+			writer.write("\":");
+			String value = results.getString(COLUMNS[i]);
+			if (value == null) {
+				writer.write("null");
+			}
+			else if (NUMBER_FIELDS.contains(FIELDS[i])) {
+				writer.write(value);
+			}
+			else {
+				writeJsonString(value, writer);
+			}
+		}
+		writer.write("}\n");
+	}
+
+	/**
+	 * Writes a string value as a quoted JSON string.
+	 */
+	static void writeJsonString(String value, Writer writer) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+			switch (character) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (character < 0x20) {
+					writer.write(String.format("\\u%04x", (int) character));
+				}
+				else {
+					writer.write(character);
+				}
+			}
+		}
+		writer.write('"');
+	}
+}
@@ -0,0 +1,139 @@
+import java.util.*;
+
+/**
+ * Class to create a Project Index object.
+ * <p>
+ * The project index finds the projects for a person without searching the whole projects list.
+ * It keeps a map from each project manager, contractor, architect and customer name (not case
+ * sensitive) to the set of project objects for that person. The maps are kept up to date as
+ * projects are added and contractors are replaced.
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ProjectIndex implements ProjectListener {
+
+	/** The types of person the projects can be found by. */
+	public static final String[] ROLES = {"Project Manager", "Contractor", "Architect", "Customer"};
+
+	// ATTRIBUTES
+	private final HashMap<String, LinkedHashSet<Project>> byProjectManager = new HashMap<>();
+	private final HashMap<String, LinkedHashSet<Project>> byContractor = new HashMap<>();
+	private final HashMap<String, LinkedHashSet<Project>> byArchitect = new HashMap<>();
+	private final HashMap<String, LinkedHashSet<Project>> byCustomer = new HashMap<>();
+
+	/**
+	 * Adds the project objects in a list to the index, e.g. when all projects are loaded.
+	 * @param projects The list of project objects.
+	 */
+	public synchronized void addAll(List<Project> projects) {
+		for (Project project : projects) {
+			add(project);
+		}
+	}
+
+	/**
+	 * Gets the projects for a person.
+	 * @param role The type of person - one of ROLES.
+	 * @param name The person's name (not case sensitive).
+	 * @param openOnly True to only include projects that are not finalised.
+	 * @return The list of project objects, in the order they were added.
+	 */
+	public synchronized ArrayList<Project> getProjects(String role, String name, boolean openOnly) {
+		ArrayList<Project> matches = new ArrayList<>();
+		LinkedHashSet<Project> projects = getIndex(role).get(name.toLowerCase());
+		if (projects != null) {
+			for (Project project : projects) {
+				if (!openOnly || !project.isFinalised()) {
+					matches.add(project);
+				}
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Gets the number of projects for a person, without creating a list.
+	 * @param role The type of person - one of ROLES.
+	 * @param name The person's name (not case sensitive).
+	 * @return The number of projects for the person.
+	 */
+	public synchronized int count(String role, String name) {
+		LinkedHashSet<Project> projects = getIndex(role).get(name.toLowerCase());
+		return (projects == null) ? 0 : projects.size();
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public synchronized void projectAdded(Project project) {
+		add(project);
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		// Deadlines are not indexed
+	}
+
+	@Override
+	public void paymentAdded(Project project, double payment) {
+		// Payments are not indexed
+	}
+
+	@Override
+	public synchronized void contractorReplaced(Project project, ProjectContact oldContractor) {
+		remove(byContractor, oldContractor.getContactName(), project);
+		add(byContractor, project.getContractor().getContactName(), project);
+	}
+
+	@Override
+	public void projectFinalised(Project project, String oldProjectName) {
+		// Finalised projects stay in the index, and are filtered out when only open projects are requested
+	}
+
+	/**
+	 * Adds a project to each map.
+	 */
+	private void add(Project project) {
+		add(byProjectManager, project.getProjectManager(), project);
+		add(byContractor, project.getContractor().getContactName(), project);
+		add(byArchitect, project.getArchitect().getContactName(), project);
+		add(byCustomer, project.getCustomer().getContactName(), project);
+	}
+
+	private static void add(HashMap<String, LinkedHashSet<Project>> index, String name, Project project) {
+		if (name != null) {
+			index.computeIfAbsent(name.toLowerCase(), key -> new LinkedHashSet<>()).add(project);
+		}
+	}
+
+	private static void remove(HashMap<String, LinkedHashSet<Project>> index, String name, Project project) {
+		if (name == null) {
+			return;
+		}
+		LinkedHashSet<Project> projects = index.get(name.toLowerCase());
+		if (projects != null) {
+			projects.remove(project);
+			if (projects.isEmpty()) {
+				index.remove(name.toLowerCase());
+			}
+		}
+	}
+
+	/**
+	 * Gets the map for a type of person.
+	 */
+	private HashMap<String, LinkedHashSet<Project>> getIndex(String role) {
+		switch (role) {
+		case "Project Manager":
+			return byProjectManager;
+		case "Contractor":
+			return byContractor;
+		case "Architect":
+			return byArchitect;
+		default:
+			return byCustomer;
+		}
+	}
+}
@@ -0,0 +1,463 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Class to create a Project Journal object.
+ * <p>
+ * The project journal is an append-only record of every change made to the projects:
+ * projects added, deadlines changed, payments added, contractors replaced and projects
+ * finalised. Each change is written as an event to a memory-mapped journal segment file,
+ * together with the value it replaced, so the history of a project can be viewed.
+ * <p>
+ * After a set number of events, a snapshot of all project objects is written and a new
+ * journal segment is started. The project objects can then be rebuilt by reading the
+ * latest snapshot and replaying the events in the segments written after it, instead of
+ * loading all projects from the database. Older segments are kept for the history.
+ * <p>
+ * Changes made without the journal (by sessions run without it, by other programs or by other
+ * users) are not in the journal. Before the rebuilt projects are used, every loaded column of
+ * every project row is compared with the rebuilt projects, in project number order. The rows
+ * are compared as they are read, without creating project objects. If any value differs, the
+ * projects are loaded from the database instead, and a new snapshot is written.
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ProjectJournal implements ProjectListener, AutoCloseable {
+
+	// Event types
+	private static final byte ADDED = 1;
+	private static final byte DEADLINE_CHANGED = 2;
+	private static final byte PAYMENT_ADDED = 3;
+	private static final byte CONTRACTOR_REPLACED = 4;
+	private static final byte FINALISED = 5;
+
+	// Size of the mapped region of a segment file, doubled when it is full
+	private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+	// ATTRIBUTES
+	private final Path directory;
+	private final int snapshotInterval;
+	private int segment;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int eventsSinceSnapshot = 0;
+	private List<Project> trackedProjects = null;
+	// True if the snapshot does not match the database, so a new one must be written
+	private boolean stale = false;
+
+	/**
+	 * Project Journal constructor.
+	 * <p>
+	 * Opens the latest journal segment in the directory, or creates the first segment.
+	 * @param directory The directory for the journal segment and snapshot files.
+	 * @param snapshotInterval The number of events after which a new snapshot is written.
+	 * @throws IOException If the journal cannot be opened.
+	 */
+	public ProjectJournal(Path directory, int snapshotInterval) throws IOException {
+		this.directory = directory;
+		this.snapshotInterval = snapshotInterval;
+		Files.createDirectories(directory);
+		List<Integer> segments = getSegments();
+		segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+		openSegment();
+		// Move to the end of the events already in the segment
+		while (buffer.remaining() >= 4 && buffer.getInt(buffer.position()) > 0) {
+			buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+			eventsSinceSnapshot += 1;
+		}
+	}
+
+	/**
+	 * Checks if the journal holds projects which can be replayed.
+	 * @return True if a snapshot or any events have been written.
+	 */
+	public boolean hasState() {
+		return Files.exists(getSnapshotPath()) || buffer.position() > 0 || segment > 0;
+	}
+
+	/**
+	 * Checks if projects rebuilt from the journal match the projects in the database.
+	 * <p>
+	 * If they do not, the journal is marked as stale, and a new snapshot is written when
+	 * the projects loaded from the database are tracked.
+	 * The rows are read with the query used to load the projects, in project number order, and
+	 * each row must have exactly the values of the rebuilt project with the same position.
+	 * @param projects The project objects rebuilt by replay.
+	 * @param statement The line to the database for running queries.
+	 * @return True if every project row matches a rebuilt project, and there are no other rebuilt projects.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public boolean matchesDatabase(List<Project> projects, Statement statement) throws SQLException {
+		ArrayList<Project> ordered = new ArrayList<>(projects);
+		ordered.sort(Comparator.comparingInt(Project::getProjectNum));
+		ResultSet results = statement.executeQuery(Poise.getProjectQuery() + " ORDER BY projects.PROJECTNUM");
+		// Contact details are only in the rows of the full project query
+		boolean contactDetails = Poise.contactCache == null;
+		int count = 0;
+		stale = false;
+		while (!stale && results.next()) {
+			stale = count == ordered.size()
+					|| !getRowValues(ordered.get(count), contactDetails).equals(getRowValues(results, contactDetails));
+			count += 1;
+		}
+		results.close();
+		stale = stale || count != ordered.size();
+		return !stale;
+	}
+
+	/**
+	 * Gets the loaded values of a project row, in the order of the project query.
+	 */
+	private static List<String> getRowValues(ResultSet results, boolean contactDetails) throws SQLException {
+		java.sql.Date deadline = results.getDate("projects.deadline");
+		ArrayList<String> values = new ArrayList<>(Arrays.asList(results.getString("projects.PROJECTNUM"),
+				results.getString("projects.projectName"), results.getString("projects.BUILDTYPE"),
+				results.getString("projects.ERFNUM"), results.getString("sites.Address"),
+				String.valueOf(results.getDouble("projects.TOTALFEE")), String.valueOf(results.getDouble("projects.totalPaid")),
+				(deadline == null) ? null : deadline.toLocalDate().toString(), results.getString("projects.projectManager"),
+				results.getString("projects.completionDate")));
+		for (String role : new String[] {"customer", "contractor", "architect"}) {
+			values.add(results.getString("projects." + role));
+			if (contactDetails) {
+				values.add(results.getString(role + "s.Telephone"));
+				values.add(results.getString(role + "s.Email"));
+				values.add(results.getString(role + "s.Address"));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the same values for a project object.
+	 */
+	private static List<String> getRowValues(Project project, boolean contactDetails) {
+		ArrayList<String> values = new ArrayList<>(Arrays.asList(String.valueOf(project.getProjectNum()),
+				project.getProjectName(), project.getBuildType(), String.valueOf(project.getERFNum()), project.getAddress(),
+				String.valueOf(project.getTotalFee()), String.valueOf(project.getTotalPaid()),
+				LocalDate.ofEpochDay(project.getDeadlineDay()).toString(), project.getProjectManager(),
+				project.getCompletionDate()));
+		for (ProjectContact contact : new ProjectContact[] {project.getCustomer(), project.getContractor(), project.getArchitect()}) {
+			values.add(contact.getContactName());
+			if (contactDetails) {
+				values.add(contact.getPhone());
+				values.add(contact.getEmail());
+				values.add(contact.getContactAddress());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Sets the list of project objects to be written to snapshots.
+	 * <p>
+	 * If there is no snapshot yet, or the snapshot does not match the database, one is written straight away.
+	 * @param projects The list of all project objects.
+	 * @throws IOException If the snapshot cannot be written.
+	 */
+	public void track(List<Project> projects) throws IOException {
+		trackedProjects = projects;
+		if (stale || !Files.exists(getSnapshotPath())) {
+			snapshot();
+		}
+	}
+
+	/**
+	 * Rebuilds the list of project objects from the latest snapshot and the events after it.
+	 * @return The list of project objects.
+	 * @throws IOException If the journal cannot be read.
+	 */
+	public ArrayList<Project> replay() throws IOException {
+		LinkedHashMap<Integer, Project> projects = new LinkedHashMap<>();
+		int firstSegment = 0;
+
+		// Read the snapshot
+		if (Files.exists(getSnapshotPath())) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(getSnapshotPath())))) {
+				firstSegment = in.readInt();
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					Project project = Project.readFrom(in);
+					projects.put(project.getProjectNum(), project);
+				}
+			}
+		}
+
+		// Apply the events written after the snapshot
+		for (int number : getSegments()) {
+			if (number >= firstSegment) {
+				for (DataInputStream event : readEvents(number)) {
+					apply(projects, event);
+				}
+			}
+		}
+		return new ArrayList<>(projects.values());
+	}
+
+	/**
+	 * Gets the history of changes made to a project, from all journal segments.
+	 * @param projectNum The project number.
+	 * @return A list of descriptions of the changes, oldest first.
+	 * @throws IOException If the journal cannot be read.
+	 */
+	public ArrayList<String> getHistory(int projectNum) throws IOException {
+		ArrayList<String> history = new ArrayList<>();
+		SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+		SimpleDateFormat timeFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		for (int number : getSegments()) {
+			for (DataInputStream event : readEvents(number)) {
+				byte type = event.readByte();
+				String time = timeFormatter.format(new Date(event.readLong()));
+				if (event.readInt() != projectNum) {
+					continue;
+				}
+				switch (type) {
+				case ADDED:
+					history.add(time + "\tProject added");
+					break;
+				case DEADLINE_CHANGED:
+					Date oldDeadline = new Date(event.readLong());
+					Date newDeadline = new Date(event.readLong());
+					history.add(time + "\tDeadline changed from " + dateFormatter.format(oldDeadline)
+							+ " to " + dateFormatter.format(newDeadline));
+					break;
+				case PAYMENT_ADDED:
+					double payment = event.readDouble();
+					double totalPaid = event.readDouble();
+					history.add(time + "\tPayment of R " + String.format(Locale.US, "%.2f", payment)
+							+ " added, total paid R " + String.format(Locale.US, "%.2f", totalPaid));
+					break;
+				case CONTRACTOR_REPLACED:
+					String oldContractor = Project.readString(event);
+					ProjectContact newContractor = ProjectContact.readFrom(event);
+					history.add(time + "\tContractor replaced: " + oldContractor + " to " + newContractor.getContactName());
+					break;
+				case FINALISED:
+					history.add(time + "\tProject finalised on " + Project.readString(event));
+					break;
+				}
+			}
+		}
+		return history;
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public void projectAdded(Project project) {
+		append(ADDED, project.getProjectNum(), out -> project.writeTo(out));
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		append(DEADLINE_CHANGED, project.getProjectNum(), out -> {
+			out.writeLong(oldDeadline.getTime());
+			out.writeLong(project.getDeadline().getTime());
+		});
+	}
+
+	@Override
+	public void paymentAdded(Project project, double payment) {
+		append(PAYMENT_ADDED, project.getProjectNum(), out -> {
+			out.writeDouble(payment);
+			out.writeDouble(project.getTotalPaid());
+		});
+	}
+
+	@Override
+	public void contractorReplaced(Project project, ProjectContact oldContractor) {
+		append(CONTRACTOR_REPLACED, project.getProjectNum(), out -> {
+			Project.writeString(out, oldContractor.getContactName());
+			project.getContractor().writeTo(out);
+		});
+	}
+
+	@Override
+	public void projectFinalised(Project project, String oldProjectName) {
+		append(FINALISED, project.getProjectNum(), out -> {
+			Project.writeString(out, project.getCompletionDate());
+			Project.writeString(out, project.getProjectName());
+		});
+	}
+
+	/**
+	 * Interface for writing the values of an event.
+	 */
+	private interface EventWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Appends an event to the journal segment, and writes a snapshot if the interval has been reached.
+	 * <p>
+	 * Each event is stored as its length, followed by the event type, time, project number and values.
+	 * @param type The event type.
+	 * @param projectNum The project number.
+	 * @param writer Writes the values of the event.
+	 */
+	private synchronized void append(byte type, int projectNum, EventWriter writer) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(type);
+			out.writeLong(System.currentTimeMillis());
+			out.writeInt(projectNum);
+			writer.write(out);
+
+			// Grow the mapped region if the event does not fit
+			if (buffer.remaining() < bytes.size() + 8) {
+				int position = buffer.position();
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) buffer.capacity() * 2);
+				buffer.position(position);
+			}
+			int start = buffer.position();
+			buffer.putInt(bytes.size());
+			buffer.put(bytes.toByteArray());
+			buffer.force(start, buffer.position() - start);
+
+			eventsSinceSnapshot += 1;
+			if (trackedProjects != null && eventsSinceSnapshot >= snapshotInterval) {
+				snapshot();
+			}
+		} catch (IOException e) {
+			System.out.println("Error! The change could not be written to the journal.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the tracked project objects, and starts a new journal segment.
+	 * <p>
+	 * The new segment is started before the snapshot is written, and the snapshot records the
+	 * number of the new segment. If the program stops before the snapshot is complete, the
+	 * previous snapshot and all of the segments after it are still used for the replay.
+	 * @throws IOException If the snapshot cannot be written.
+	 */
+	private void snapshot() throws IOException {
+		if (buffer.position() > 0) {
+			channel.close();
+			segment += 1;
+			openSegment();
+		}
+		Path temp = directory.resolve("snapshot.tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(segment);
+			out.writeInt(trackedProjects.size());
+			for (Project project : trackedProjects) {
+				project.writeTo(out);
+			}
+		}
+		Files.move(temp, getSnapshotPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		eventsSinceSnapshot = 0;
+		stale = false;
+	}
+
+	/**
+	 * Applies an event to the project objects being rebuilt.
+	 */
+	private static void apply(Map<Integer, Project> projects, DataInputStream event) throws IOException {
+		byte type = event.readByte();
+		event.readLong();
+		int projectNum = event.readInt();
+		if (type == ADDED) {
+			projects.put(projectNum, Project.readFrom(event));
+			return;
+		}
+		Project project = projects.get(projectNum);
+		if (project == null) {
+			return;
+		}
+		switch (type) {
+		case DEADLINE_CHANGED:
+			event.readLong();
+			project.setDeadline(new Date(event.readLong()));
+			break;
+		case PAYMENT_ADDED:
+			event.readDouble();
+			project.setTotalPaid(event.readDouble());
+			break;
+		case CONTRACTOR_REPLACED:
+			Project.readString(event);
+			project.setContractor(ProjectContact.readFrom(event));
+			break;
+		case FINALISED:
+			project.setCompletionDate(Project.readString(event));
+			project.setProjectName(Project.readString(event));
+			break;
+		}
+	}
+
+	/**
+	 * Reads the events in a journal segment.
+	 * @param number The segment number.
+	 * @return A data input for each event, positioned at the event type.
+	 * @throws IOException If the segment cannot be read.
+	 */
+	private ArrayList<DataInputStream> readEvents(int number) throws IOException {
+		ArrayList<DataInputStream> events = new ArrayList<>();
+		try (FileChannel segmentChannel = FileChannel.open(getSegmentPath(number), StandardOpenOption.READ)) {
+			MappedByteBuffer segmentBuffer = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size());
+			while (segmentBuffer.remaining() >= 4) {
+				int length = segmentBuffer.getInt();
+				if (length <= 0) {
+					break;
+				}
+				byte[] bytes = new byte[length];
+				segmentBuffer.get(bytes);
+				events.add(new DataInputStream(new ByteArrayInputStream(bytes)));
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Opens and maps the current journal segment file.
+	 */
+	private void openSegment() throws IOException {
+		channel = FileChannel.open(getSegmentPath(segment), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = Math.max(channel.size(), SEGMENT_SIZE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Gets the numbers of the journal segment files in the directory, in order.
+	 */
+	private List<Integer> getSegments() throws IOException {
+		ArrayList<Integer> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				segments.add(Integer.parseInt(name.substring(8, name.length() - 4)));
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private Path getSegmentPath(int number) {
+		return directory.resolve("journal-" + number + ".log");
+	}
+
+	private Path getSnapshotPath() {
+		return directory.resolve("snapshot.dat");
+	}
+
+	/**
+	 * Closes the journal segment file.
+	 * @throws IOException If the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+}
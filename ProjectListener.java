@@ -0,0 +1,50 @@
+
+import java.util.Date;
+
+/**
+ * Interface for objects which are told about changes to project objects.
+ * <p>
+ * The Poise class calls the listeners once a change has been saved to the database
+ * and the project object has been updated. Each method receives the updated project
+ * object, and the value it had before the change.
+ * 
+ * @author Lindsey
+ * @see Poise
+ * @see Project
+ */
+public interface ProjectListener {
+	
+	/**
+	 * Called when a new project has been added.
+	 * @param project The new project object.
+	 */
+	void projectAdded(Project project);
+	
+	/**
+	 * Called when the deadline of a project has been changed.
+	 * @param project The updated project object.
+	 * @param oldDeadline The deadline before the change.
+	 */
+	void deadlineChanged(Project project, Date oldDeadline);
+	
+	/**
+	 * Called when a payment has been added to the total paid for a project.
+	 * @param project The updated project object.
+	 * @param payment The payment amount which was added.
+	 */
+	void paymentAdded(Project project, double payment);
+	
+	/**
+	 * Called when the contractor of a project has been replaced.
+	 * @param project The updated project object.
+	 * @param oldContractor The contractor project contact object before the change.
+	 */
+	void contractorReplaced(Project project, ProjectContact oldContractor);
+	
+	/**
+	 * Called when a project has been finalised.
+	 * @param project The finalised project object.
+	 * @param oldProjectName The project name before " (Finalised)" was added.
+	 */
+	void projectFinalised(Project project, String oldProjectName);
+}
@@ -0,0 +1,560 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Class to create a Project Query object.
+ * <p>
+ * A project query selects project objects from a list with conditions on any project value,
+ * sorts them, limits the number returned, and optionally selects the values to print. The
+ * conditions are all required (AND). For example, the open projects of a contractor, latest
+ * deadline first:
+ * <pre>
+ * new ProjectQuery().where(Field.CONTRACTOR, Operator.EQUALS, "Bob Smith")
+ *         .where(Field.COMPLETION_DATE, Operator.IS_NULL)
+ *         .orderBy(Field.DEADLINE, true).limit(10).run(projects);
+ * </pre>
+ * The query is run by a query plan, which chooses the fastest way to find the projects.
+ * Queries can also be written as text and read with the parse method, e.g.
+ * "where contractor = 'Bob Smith' and completionDate is null order by deadline desc limit 10".
+ * <p>
+ * Text values are compared without case.
+ *
+ * @author Lindsey
+ * @see QueryPlan
+ * @see Poise
+ */
+public class ProjectQuery {
+
+	/**
+	 * Project values that queries can use, with the names used in query text.
+	 */
+	public enum Field {
+		PROJECT_NUM("projectNum", "projects.PROJECTNUM", Integer.class, project -> project.getProjectNum()),
+		PROJECT_NAME("projectName", "projects.projectName", String.class, project -> project.getProjectName()),
+		BUILD_TYPE("buildType", "projects.BUILDTYPE", String.class, project -> project.getBuildType()),
+		ERF_NUM("erfNum", "projects.ERFNUM", Integer.class, project -> project.getERFNum()),
+		ADDRESS("address", "sites.Address", String.class, project -> project.getAddress()),
+		TOTAL_FEE("totalFee", "projects.TOTALFEE", Double.class, project -> project.getTotalFee()),
+		TOTAL_PAID("totalPaid", "projects.totalpaid", Double.class, project -> project.getTotalPaid()),
+		DEADLINE("deadline", "projects.deadline", LocalDate.class, project -> LocalDate.ofEpochDay(project.getDeadlineDay())),
+		CUSTOMER("customer", "projects.customer", String.class, project -> project.getCustomer().getContactName()),
+		CONTRACTOR("contractor", "projects.contractor", String.class, project -> project.getContractor().getContactName()),
+		ARCHITECT("architect", "projects.architect", String.class, project -> project.getArchitect().getContactName()),
+		PROJECT_MANAGER("projectManager", "projects.projectManager", String.class, project -> project.getProjectManager()),
+		COMPLETION_DATE("completionDate", "projects.completionDate", LocalDate.class,
+				project -> project.isFinalised() ? LocalDate.parse(project.getCompletionDate()) : null);
+
+		final String name;
+		// The column in the project queries of Poise
+		final String column;
+		final Class<?> type;
+		private final Function<Project, Object> getter;
+
+		Field(String name, String column, Class<?> type, Function<Project, Object> getter) {
+			this.name = name;
+			this.column = column;
+			this.type = type;
+			this.getter = getter;
+		}
+
+		/**
+		 * Gets the value of the field for a project.
+		 * @param project The project object.
+		 * @return The value, or null if the project has no value.
+		 */
+		public Object get(Project project) {
+			return getter.apply(project);
+		}
+
+		/**
+		 * Converts a value to the type of the field, e.g. "2024-05-01" to a date.
+		 * @param value The value (a string, number or date).
+		 * @return The converted value.
+		 * @throws IllegalArgumentException If the value cannot be converted.
+		 */
+		public Object convert(Object value) {
+			try {
+				if (type == Integer.class) {
+					return (value instanceof Number) ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+				}
+				if (type == Double.class) {
+					return (value instanceof Number) ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+				}
+				if (type == LocalDate.class) {
+					if (value instanceof Date) {
+						return LocalDate.ofEpochDay(Project.toDay((Date) value));
+					}
+					return (value instanceof LocalDate) ? value : LocalDate.parse(value.toString().trim());
+				}
+				return value.toString();
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("'" + value + "' is not a valid value for " + name + ".");
+			}
+		}
+
+		/**
+		 * Gets the field with a name used in query text (not case sensitive).
+		 * @param name The field name, e.g. "projectNum".
+		 * @return The field.
+		 * @throws IllegalArgumentException If there is no field with the name.
+		 */
+		public static Field forName(String name) {
+			for (Field field : values()) {
+				if (field.name.equalsIgnoreCase(name)) {
+					return field;
+				}
+			}
+			throw new IllegalArgumentException("Unknown field '" + name + "'.");
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * Comparisons that conditions can use, with the symbols used in query text.
+	 */
+	public enum Operator {
+		EQUALS("="), NOT_EQUALS("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">="),
+		BETWEEN("between"), CONTAINS("contains"), IS_NULL("is null"), IS_NOT_NULL("is not null");
+
+		final String symbol;
+
+		Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		/**
+		 * Gets the number of values the operator compares with.
+		 * @return 0, 1 or 2 (for between).
+		 */
+		int getValueCount() {
+			return (this == BETWEEN) ? 2 : (this == IS_NULL || this == IS_NOT_NULL) ? 0 : 1;
+		}
+	}
+
+	/**
+	 * Class for one condition of a query.
+	 */
+	public static class Condition {
+		final Field field;
+		final Operator operator;
+		final Object value;
+		final Object secondValue;
+
+		Condition(Field field, Operator operator, Object value, Object secondValue) {
+			this.field = field;
+			this.operator = operator;
+			this.value = value;
+			this.secondValue = secondValue;
+		}
+
+		/**
+		 * Checks if a project meets the condition.
+		 * @param project The project object.
+		 * @return True if the project meets the condition.
+		 */
+		public boolean test(Project project) {
+			Object actual = field.get(project);
+			if (operator == Operator.IS_NULL) {
+				return actual == null;
+			}
+			if (actual == null) {
+				return operator == Operator.NOT_EQUALS;
+			}
+			switch (operator) {
+			case IS_NOT_NULL:
+				return true;
+			case EQUALS:
+				return compare(actual, value) == 0;
+			case NOT_EQUALS:
+				return compare(actual, value) != 0;
+			case LESS:
+				return compare(actual, value) < 0;
+			case LESS_OR_EQUAL:
+				return compare(actual, value) <= 0;
+			case GREATER:
+				return compare(actual, value) > 0;
+			case GREATER_OR_EQUAL:
+				return compare(actual, value) >= 0;
+			case BETWEEN:
+				return compare(actual, value) >= 0 && compare(actual, secondValue) <= 0;
+			default:
+				return actual.toString().toLowerCase().contains(value.toString().toLowerCase());
+			}
+		}
+
+		/**
+		 * Overrides the toString method.
+		 * <p>
+		 * Builds the condition as it is written in query text.
+		 */
+		public String toString() {
+			String output = field + " " + operator.symbol;
+			if (operator.getValueCount() > 0) {
+				output += " " + format(value);
+			}
+			if (operator == Operator.BETWEEN) {
+				output += " and " + format(secondValue);
+			}
+			return output;
+		}
+
+		/**
+		 * Builds the condition as SQL, for the project queries of Poise.
+		 * <p>
+		 * The SQL matches the same projects as the test method, as the database compares text
+		 * without case.
+		 * @return The condition, for a WHERE clause.
+		 */
+		public String toSql() {
+			switch (operator) {
+			case IS_NULL:
+				return field.column + " IS NULL";
+			case IS_NOT_NULL:
+				return field.column + " IS NOT NULL";
+			case NOT_EQUALS:
+				// Projects without a value do not equal the value
+				return "(" + field.column + " <> " + toSql(value) + " OR " + field.column + " IS NULL)";
+			case BETWEEN:
+				return field.column + " BETWEEN " + toSql(value) + " AND " + toSql(secondValue);
+			case CONTAINS:
+				return field.column + " LIKE '%" + value.toString().replace("'", "''").replace("%", "\\%").replace("_", "\\_") + "%'";
+			default:
+				return field.column + " " + operator.symbol.replace("!=", "<>") + " " + toSql(value);
+			}
+		}
+
+		private static String format(Object value) {
+			return (value instanceof String) ? "'" + value + "'" : String.valueOf(value);
+		}
+
+		private static String toSql(Object value) {
+			return (value instanceof Number) ? String.valueOf(value) : "'" + value.toString().replace("'", "''") + "'";
+		}
+	}
+
+	// ATTRIBUTES
+	final ArrayList<Condition> conditions = new ArrayList<>();
+	final ArrayList<Field> sortFields = new ArrayList<>();
+	final ArrayList<Boolean> sortDescending = new ArrayList<>();
+	final ArrayList<Field> selectedFields = new ArrayList<>();
+	int limit = -1;
+
+	/**
+	 * Adds a condition which the projects must meet.
+	 * @param field The project value to compare.
+	 * @param operator The comparison.
+	 * @param values The values to compare with - none for is null and is not null, two for between.
+	 * @return This query, so further clauses can be added.
+	 * @throws IllegalArgumentException If the wrong number of values is given, or a value has the wrong type.
+	 */
+	public ProjectQuery where(Field field, Operator operator, Object... values) {
+		if (values.length != operator.getValueCount()) {
+			throw new IllegalArgumentException(operator.symbol + " needs " + operator.getValueCount() + " values.");
+		}
+		// Contains always compares the text of the value
+		Object value = (values.length == 0) ? null : (operator == Operator.CONTAINS) ? values[0].toString() : field.convert(values[0]);
+		Object secondValue = (values.length < 2) ? null : field.convert(values[1]);
+		conditions.add(new Condition(field, operator, value, secondValue));
+		return this;
+	}
+
+	/**
+	 * Adds a sort key. Projects are sorted by the first key, then by the next key where they are equal.
+	 * Projects without a value are sorted last.
+	 * @param field The project value to sort by.
+	 * @param descending True to sort from the highest value to the lowest.
+	 * @return This query, so further clauses can be added.
+	 */
+	public ProjectQuery orderBy(Field field, boolean descending) {
+		sortFields.add(field);
+		sortDescending.add(descending);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of projects returned.
+	 * @param limit The maximum number of projects.
+	 * @return This query, so further clauses can be added.
+	 */
+	public ProjectQuery limit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * Sets the project values to print, instead of the whole project.
+	 * @param fields The project values, in the order they are printed.
+	 * @return This query, so further clauses can be added.
+	 */
+	public ProjectQuery select(Field... fields) {
+		selectedFields.addAll(Arrays.asList(fields));
+		return this;
+	}
+
+	/**
+	 * Checks if the query selects values to print.
+	 * @return True if select was used.
+	 */
+	public boolean hasSelect() {
+		return !selectedFields.isEmpty();
+	}
+
+	/**
+	 * Checks if the query has any conditions.
+	 * @return True if where was used.
+	 */
+	public boolean hasConditions() {
+		return !conditions.isEmpty();
+	}
+
+	/**
+	 * Checks if the query only matches open projects (completionDate is null).
+	 * @return True if the query has a completionDate is null condition.
+	 */
+	public boolean isOpenOnly() {
+		for (Condition condition : conditions) {
+			if (condition.field == Field.COMPLETION_DATE && condition.operator == Operator.IS_NULL) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the WHERE clause of the conditions, so only the matching projects are read from a database.
+	 * @return The WHERE clause, or an empty string if there are no conditions.
+	 */
+	public String getSqlCondition() {
+		StringBuilder output = new StringBuilder();
+		for (int i = 0; i < conditions.size(); i++) {
+			output.append((i == 0) ? " WHERE " : " AND ").append(conditions.get(i).toSql());
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Plans the query over a list of projects, without running it.
+	 * @param projects The list of project objects to query.
+	 * @return The query plan.
+	 */
+	public QueryPlan plan(List<Project> projects) {
+		return new QueryPlan(this, projects);
+	}
+
+	/**
+	 * Runs the query over a list of projects.
+	 * @param projects The list of project objects to query.
+	 * @return The list of matching project objects, sorted and limited.
+	 */
+	public ArrayList<Project> run(List<Project> projects) {
+		return plan(projects).execute();
+	}
+
+	/**
+	 * Runs the query over a list of projects, and gets the first match.
+	 * @param projects The list of project objects to query.
+	 * @return The first matching project object, or null if there is no match.
+	 */
+	public Project first(List<Project> projects) {
+		limit(1);
+		ArrayList<Project> matches = run(projects);
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	/**
+	 * Builds a table of the selected values of the projects, one tab-separated line for each project.
+	 * @param projects The projects returned by the query.
+	 * @return The table, with the field names as the first line.
+	 */
+	public String formatRows(List<Project> projects) {
+		StringBuilder output = new StringBuilder();
+		for (int i = 0; i < selectedFields.size(); i++) {
+			output.append((i == 0) ? "" : "\t").append(selectedFields.get(i));
+		}
+		output.append('\n');
+		for (Project project : projects) {
+			for (int i = 0; i < selectedFields.size(); i++) {
+				output.append((i == 0) ? "" : "\t").append(selectedFields.get(i).get(project));
+			}
+			output.append('\n');
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Compares two values of the same field. Text is compared without case.
+	 */
+	@SuppressWarnings("unchecked")
+	static int compare(Object first, Object second) {
+		if (first instanceof String) {
+			return ((String) first).compareToIgnoreCase((String) second);
+		}
+		return ((Comparable<Object>) first).compareTo(second);
+	}
+
+	/**
+	 * Overrides the toString method.
+	 * <p>
+	 * Builds the query as query text.
+	 */
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+		for (int i = 0; i < conditions.size(); i++) {
+			output.append((i == 0) ? "where " : " and ").append(conditions.get(i));
+		}
+		for (int i = 0; i < sortFields.size(); i++) {
+			output.append((i == 0) ? " order by " : ", ").append(sortFields.get(i)).append(sortDescending.get(i) ? " desc" : " asc");
+		}
+		if (limit >= 0) {
+			output.append(" limit ").append(limit);
+		}
+		for (int i = 0; i < selectedFields.size(); i++) {
+			output.append((i == 0) ? " select " : ", ").append(selectedFields.get(i));
+		}
+		return output.toString().trim();
+	}
+
+	/**
+	 * Reads a query from query text.
+	 * <p>
+	 * The text has the optional clauses, in this order:
+	 * <pre>
+	 * where &lt;field&gt; &lt;operator&gt; &lt;value&gt; [and ...]
+	 * order by &lt;field&gt; [asc|desc] [, ...]
+	 * limit &lt;count&gt;
+	 * select &lt;field&gt; [, ...]
+	 * </pre>
+	 * The operators are =, !=, &lt;, &lt;=, &gt;, &gt;=, between &lt;value&gt; and &lt;value&gt;, contains,
+	 * is null and is not null. Values with spaces are written in single quotes.
+	 * @param text The query text.
+	 * @return The query.
+	 * @throws IllegalArgumentException If the text is not a valid query.
+	 */
+	public static ProjectQuery parse(String text) {
+		ArrayList<String> tokens = tokenise(text);
+		ProjectQuery query = new ProjectQuery();
+		int position = 0;
+		if (position < tokens.size() && tokens.get(position).equalsIgnoreCase("where")) {
+			do {
+				position += 1;
+				Field field = Field.forName(getToken(tokens, position++));
+				String symbol = getToken(tokens, position++).toLowerCase();
+				if (symbol.equals("is")) {
+					boolean not = getToken(tokens, position).equalsIgnoreCase("not");
+					position += not ? 1 : 0;
+					expect(tokens, position++, "null");
+					query.where(field, not ? Operator.IS_NOT_NULL : Operator.IS_NULL);
+				}
+				else if (symbol.equals("between")) {
+					String from = getToken(tokens, position++);
+					expect(tokens, position++, "and");
+					query.where(field, Operator.BETWEEN, from, getToken(tokens, position++));
+				}
+				else {
+					Operator operator = null;
+					for (Operator candidate : Operator.values()) {
+						if (candidate.getValueCount() == 1 && candidate.symbol.equals(symbol)) {
+							operator = candidate;
+						}
+					}
+					if (operator == null) {
+						throw new IllegalArgumentException("Unknown operator '" + symbol + "'.");
+					}
+					query.where(field, operator, getToken(tokens, position++));
+				}
+			} while (position < tokens.size() && tokens.get(position).equalsIgnoreCase("and"));
+		}
+		if (position < tokens.size() && tokens.get(position).equalsIgnoreCase("order")) {
+			expect(tokens, position + 1, "by");
+			position += 1;
+			do {
+				position += 1;
+				Field field = Field.forName(getToken(tokens, position++));
+				boolean descending = false;
+				if (position < tokens.size() && (tokens.get(position).equalsIgnoreCase("asc") || tokens.get(position).equalsIgnoreCase("desc"))) {
+					descending = tokens.get(position).equalsIgnoreCase("desc");
+					position += 1;
+				}
+				query.orderBy(field, descending);
+			} while (position < tokens.size() && tokens.get(position).equals(","));
+		}
+		if (position < tokens.size() && tokens.get(position).equalsIgnoreCase("limit")) {
+			try {
+				query.limit(Integer.parseInt(getToken(tokens, position + 1)));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("The limit must be a whole number.");
+			}
+			position += 2;
+		}
+		if (position < tokens.size() && tokens.get(position).equalsIgnoreCase("select")) {
+			do {
+				position += 1;
+				query.select(Field.forName(getToken(tokens, position++)));
+			} while (position < tokens.size() && tokens.get(position).equals(","));
+		}
+		if (position < tokens.size()) {
+			throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "'.");
+		}
+		return query;
+	}
+
+	/**
+	 * Splits query text into words, symbols, commas and quoted values (without the quotes).
+	 */
+	private static ArrayList<String> tokenise(String text) {
+		ArrayList<String> tokens = new ArrayList<>();
+		int i = 0;
+		while (i < text.length()) {
+			char character = text.charAt(i);
+			if (Character.isWhitespace(character)) {
+				i += 1;
+			}
+			else if (character == '\'') {
+				int end = text.indexOf('\'', i + 1);
+				if (end < 0) {
+					throw new IllegalArgumentException("A quote is not closed.");
+				}
+				tokens.add(text.substring(i + 1, end));
+				i = end + 1;
+			}
+			else if (character == ',') {
+				tokens.add(",");
+				i += 1;
+			}
+			else if ("=!<>".indexOf(character) >= 0) {
+				int end = i + 1;
+				if (end < text.length() && text.charAt(end) == '=') {
+					end += 1;
+				}
+				tokens.add(text.substring(i, end));
+				i = end;
+			}
+			else {
+				int end = i;
+				while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && ",'=!<>".indexOf(text.charAt(end)) < 0) {
+					end += 1;
+				}
+				tokens.add(text.substring(i, end));
+				i = end;
+			}
+		}
+		return tokens;
+	}
+
+	private static String getToken(ArrayList<String> tokens, int position) {
+		if (position >= tokens.size()) {
+			throw new IllegalArgumentException("The query is incomplete.");
+		}
+		return tokens.get(position);
+	}
+
+	private static void expect(ArrayList<String> tokens, int position, String word) {
+		if (!getToken(tokens, position).equalsIgnoreCase(word)) {
+			throw new IllegalArgumentException("Expected '" + word + "' but found '" + tokens.get(position) + "'.");
+		}
+	}
+}
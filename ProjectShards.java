@@ -0,0 +1,171 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class to create a Project Shards object.
+ * <p>
+ * Project shards split the projects across several poisePMS databases. Each project,
+ * together with its site and contacts, is stored in the database (shard) chosen by
+ * its project number: shard = project number modulo the number of shards.
+ * <p>
+ * Updates and lookups by project number only use the owning shard. Lists of projects,
+ * such as the incomplete and overdue views, are queried on all of the shards at the same
+ * time and the results are merged in project number order.
+ * <p>
+ * Any JDBC URL can be used for a shard, so several embedded databases (e.g. H2 in MySQL mode)
+ * can stand in for the shards when testing on one machine.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class ProjectShards implements AutoCloseable {
+
+	// ATTRIBUTES
+	private final Connection[] connections;
+	private final Statement[] statements;
+	private final ExecutorService executor;
+
+	/**
+	 * Project Shards constructor.
+	 * <p>
+	 * Connects to each shard database.
+	 * @param urls The JDBC URLs of the shard databases. The order of the URLs must not change
+	 * once projects have been added, as it decides which shard owns each project.
+	 * @throws SQLException If the connection to a shard fails.
+	 */
+	public ProjectShards(List<String> urls) throws SQLException {
+		connections = new Connection[urls.size()];
+		statements = new Statement[urls.size()];
+		for (int i = 0; i < urls.size(); i++) {
+			connections[i] = Poise.connectToDatabase(urls.get(i));
+			if (connections[i] == null) {
+				throw new SQLException("The connection to shard " + i + " failed.");
+			}
+			statements[i] = connections[i].createStatement();
+		}
+		// Daemon threads, so the program can still exit if the shards are not closed after an error
+		executor = Executors.newFixedThreadPool(urls.size(), task -> {
+			Thread thread = new Thread(task, "shard-query");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Gets the number of the shard which owns a project.
+	 * @param projectNum The project number.
+	 * @return The shard number.
+	 */
+	public int getShard(int projectNum) {
+		return Math.floorMod(projectNum, connections.length);
+	}
+
+	/**
+	 * Gets the connection to the shard which owns a project.
+	 * @param projectNum The project number.
+	 * @return The connection to the shard database.
+	 */
+	public Connection getConnection(int projectNum) {
+		return connections[getShard(projectNum)];
+	}
+
+	/**
+	 * Gets the connections to all of the shards.
+	 * @return The list of shard connections, in shard order.
+	 */
+	public List<Connection> getConnections() {
+		return Arrays.asList(connections);
+	}
+
+	/**
+	 * Gets the line to the shard which owns a project, for running queries and updates.
+	 * @param projectNum The project number.
+	 * @return The statement for the shard database.
+	 */
+	public Statement getStatement(int projectNum) {
+		return statements[getShard(projectNum)];
+	}
+
+	/**
+	 * Gets the project with the project number from the shard which owns it.
+	 * @param projectNum The project number.
+	 * @return The project object, or null if the project does not exist.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public Project getProject(int projectNum) throws SQLException {
+		ResultSet results = getStatement(projectNum).executeQuery(Poise.getProjectQuery()
+				+ " WHERE projects.PROJECTNUM = '" + projectNum + "'");
+		Project project = results.next() ? Poise.createProject(results) : null;
+		results.close();
+		return project;
+	}
+
+	/**
+	 * Gets the first project with the project name, searching all shards.
+	 * @param projectName The project name.
+	 * @return The project object, or null if the project does not exist.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public Project getProject(String projectName) throws SQLException {
+		ArrayList<Project> matches = getProjects(" WHERE projects.projectName = '" + projectName.replace("'", "''") + "'");
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	/**
+	 * Gets the projects which match a condition from all of the shards.
+	 * <p>
+	 * The query is run on every shard at the same time, and the results are merged
+	 * in project number order.
+	 * @param condition The WHERE clause used to select the projects, or an empty string for all projects.
+	 * @return The list of matching project objects.
+	 * @throws SQLException If a database error occurs on any shard.
+	 */
+	public ArrayList<Project> getProjects(String condition) throws SQLException {
+		ArrayList<Future<ArrayList<Project>>> futures = new ArrayList<>();
+		for (Statement statement : statements) {
+			futures.add(executor.submit(() -> {
+				ArrayList<Project> shardProjects = new ArrayList<>();
+				ResultSet results = statement.executeQuery(Poise.getProjectQuery() + condition);
+				while (results.next()) {
+					shardProjects.add(Poise.createProject(results));
+				}
+				results.close();
+				return shardProjects;
+			}));
+		}
+
+		// Gather the results of each shard
+		ArrayList<Project> projects = new ArrayList<>();
+		for (Future<ArrayList<Project>> future : futures) {
+			try {
+				projects.addAll(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("The shard query was interrupted.", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof SQLException) {
+					throw (SQLException) e.getCause();
+				}
+				throw new SQLException("The shard query failed.", e.getCause());
+			}
+		}
+		projects.sort(Comparator.comparingInt(Project::getProjectNum));
+		return projects;
+	}
+
+	/**
+	 * Closes the connections to all of the shards.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public void close() throws SQLException {
+		executor.shutdown();
+		for (int i = 0; i < connections.length; i++) {
+			statements[i].close();
+			connections[i].close();
+		}
+	}
+}
@@ -0,0 +1,225 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Class to create a Project Snapshots object.
+ * <p>
+ * Project snapshots give reader threads a consistent view of all projects without any locking.
+ * The projects are held in a persistent (never changed) hash array mapped trie, keyed by project
+ * number. Each level of the trie uses 5 bits of the project number, from the highest bits to the
+ * lowest, so the projects are visited in project number order. Each node only holds the slots
+ * that are used, marked in a bitmap.
+ * <p>
+ * When a project is added or changed, a copy of the project is put in a new version of the trie.
+ * Only the nodes on the path to the project are copied, and the rest are shared with the previous
+ * version. The new version is then published with a compare-and-set, so a reader always sees
+ * either the old or the new version. The project objects in a snapshot are copies, and must not
+ * be changed.
+ * <p>
+ * As the first snapshot holds a copy of every project, snapshots are only kept when the program
+ * is run with the --snapshots argument.
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ProjectSnapshots implements ProjectListener {
+
+	// Bits of the project number used by each level, and the shift of the top level
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final int TOP_SHIFT = 30;
+
+	/**
+	 * Class for a node of the trie.
+	 */
+	private static final class Node {
+		final int bitmap;
+		// Child nodes, or project objects in the lowest level
+		final Object[] slots;
+
+		Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+	}
+
+	private static final Node EMPTY = new Node(0, new Object[0]);
+
+	/**
+	 * Class for one version of all projects.
+	 */
+	public static final class Snapshot {
+		private final Node root;
+		private final int size;
+		private final long version;
+
+		private Snapshot(Node root, int size, long version) {
+			this.root = root;
+			this.size = size;
+			this.version = version;
+		}
+
+		/**
+		 * Gets the project with the project number.
+		 * @param projectNum The project number.
+		 * @return The project object (which must not be changed), or null if there is no project with the number.
+		 */
+		public Project get(int projectNum) {
+			Node node = root;
+			for (int shift = TOP_SHIFT; ; shift -= BITS) {
+				int bit = 1 << ((projectNum >>> shift) & MASK);
+				if ((node.bitmap & bit) == 0) {
+					return null;
+				}
+				Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+				if (shift == 0) {
+					return (Project) slot;
+				}
+				node = (Node) slot;
+			}
+		}
+
+		/**
+		 * Gets the number of projects.
+		 * @return The number of projects in the snapshot.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the version number, which goes up by one for each change.
+		 * @return The version number.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Passes each project to an action, in project number order.
+		 * @param action The action for each project object (which must not be changed).
+		 */
+		public void forEach(Consumer<Project> action) {
+			forEach(root, TOP_SHIFT, action);
+		}
+
+		/**
+		 * Gets all projects, in project number order.
+		 * @return A new list of the project objects (which must not be changed).
+		 */
+		public ArrayList<Project> getProjects() {
+			ArrayList<Project> projects = new ArrayList<>(size);
+			forEach(projects::add);
+			return projects;
+		}
+
+		private static void forEach(Node node, int shift, Consumer<Project> action) {
+			for (Object slot : node.slots) {
+				if (shift == 0) {
+					action.accept((Project) slot);
+				}
+				else {
+					forEach((Node) slot, shift - BITS, action);
+				}
+			}
+		}
+	}
+
+	// ATTRIBUTES
+	private final AtomicReference<Snapshot> current;
+
+	/**
+	 * Project Snapshots constructor.
+	 * @param projects The list of all project objects, which are copied into the first snapshot.
+	 */
+	public ProjectSnapshots(List<Project> projects) {
+		Node root = EMPTY;
+		int size = 0;
+		for (Project project : projects) {
+			if (get(root, project.getProjectNum()) == null) {
+				size += 1;
+			}
+			root = put(root, project.getProjectNum(), project.copy(), TOP_SHIFT);
+		}
+		current = new AtomicReference<>(new Snapshot(root, size, 0));
+	}
+
+	/**
+	 * Gets the latest snapshot of all projects.
+	 * @return The snapshot, which does not change when projects are changed later.
+	 */
+	public Snapshot current() {
+		return current.get();
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public void projectAdded(Project project) {
+		publish(project);
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		publish(project);
+	}
+
+	@Override
+	public void paymentAdded(Project project, double payment) {
+		publish(project);
+	}
+
+	@Override
+	public void contractorReplaced(Project project, ProjectContact oldContractor) {
+		publish(project);
+	}
+
+	@Override
+	public void projectFinalised(Project project, String oldProjectName) {
+		publish(project);
+	}
+
+	/**
+	 * Publishes a new snapshot with a copy of the project.
+	 * <p>
+	 * If another thread publishes first, the path is copied again from its snapshot.
+	 */
+	private void publish(Project project) {
+		Project copy = project.copy();
+		int projectNum = project.getProjectNum();
+		while (true) {
+			Snapshot previous = current.get();
+			int size = previous.size + ((get(previous.root, projectNum) == null) ? 1 : 0);
+			Node root = put(previous.root, projectNum, copy, TOP_SHIFT);
+			if (current.compareAndSet(previous, new Snapshot(root, size, previous.version + 1))) {
+				return;
+			}
+		}
+	}
+
+	private static Project get(Node root, int projectNum) {
+		return new Snapshot(root, 0, 0).get(projectNum);
+	}
+
+	/**
+	 * Returns a copy of the node with the project put in the slot for its number.
+	 */
+	private static Node put(Node node, int projectNum, Project project, int shift) {
+		int bit = 1 << ((projectNum >>> shift) & MASK);
+		int index = Integer.bitCount(node.bitmap & (bit - 1));
+		if ((node.bitmap & bit) != 0) {
+			// Replace the slot
+			Object[] slots = node.slots.clone();
+			slots[index] = (shift == 0) ? project : put((Node) slots[index], projectNum, project, shift - BITS);
+			return new Node(node.bitmap, slots);
+		}
+		// Insert a new slot
+		Object[] slots = new Object[node.slots.length + 1];
+		System.arraycopy(node.slots, 0, slots, 0, index);
+		System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+		slots[index] = (shift == 0) ? project : put(EMPTY, projectNum, project, shift - BITS);
+		return new Node(node.bitmap | bit, slots);
+	}
+}
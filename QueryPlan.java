@@ -0,0 +1,280 @@
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Class to create a Query Plan object.
+ * <p>
+ * A query plan chooses how a project query finds its projects, and runs it. When all projects
+ * are loaded (the project cache and shards are not in use), the indexes that are kept up to date
+ * by the project listeners can be used instead of checking every project:
+ * <ul>
+ * <li>Project snapshots - a project number = condition (only when contact details are not loaded on demand).</li>
+ * <li>Project index - a project manager, contractor, architect or customer = condition.</li>
+ * <li>ERF index - an ERF number =, &lt;, &lt;=, &gt;, &gt;= or between condition.</li>
+ * </ul>
+ * The number of projects each index would return is estimated, and the index with the fewest
+ * is used. The other conditions are then checked for each of those projects. If no index would
+ * return fewer projects than the list, every project is checked (a scan), with several threads
+ * for large lists. The explain method describes the chosen plan.
+ * <p>
+ * Projects found with the project snapshots are copies, and must only be used for viewing.
+ * <p>
+ * When finalised projects are archived, they are not in the list or the indexes. The archived
+ * projects that meet the conditions can be added, and are then checked, sorted and limited with
+ * the other candidates.
+ *
+ * @author Lindsey
+ * @see ProjectQuery
+ * @see Poise
+ */
+public class QueryPlan {
+
+	// Lists with at least this many projects are scanned by several threads
+	private static final int PARALLEL_THRESHOLD = 10000;
+
+	/**
+	 * The ways of finding the projects.
+	 */
+	private enum Access {
+		SNAPSHOT_LOOKUP, PERSON_INDEX, ERF_INDEX, SCAN, PARALLEL_SCAN
+	}
+
+	// ATTRIBUTES
+	private final ProjectQuery query;
+	private final List<Project> projects;
+	private Access access;
+	// The condition answered by the index, or null for a scan
+	private ProjectQuery.Condition indexCondition = null;
+	private long estimate;
+	// ERF range for the ERF index
+	private int erfFrom, erfTo;
+	// Archived projects added to the candidates, or null
+	private List<Project> archivedProjects = null;
+
+	/**
+	 * Query Plan constructor.
+	 * <p>
+	 * Chooses the cheapest way of finding the projects.
+	 * @param query The query to run.
+	 * @param projects The list of project objects to query.
+	 */
+	public QueryPlan(ProjectQuery query, List<Project> projects) {
+		this.query = query;
+		this.projects = projects;
+		access = (projects.size() >= PARALLEL_THRESHOLD) ? Access.PARALLEL_SCAN : Access.SCAN;
+		estimate = projects.size();
+
+		// Indexes only hold the loaded projects, so they are only used when all projects are loaded
+		if (Poise.projectShards != null || Poise.projectCache != null) {
+			return;
+		}
+		for (ProjectQuery.Condition condition : query.conditions) {
+			long cost = -1;
+			Access conditionAccess = null;
+			if (condition.field == ProjectQuery.Field.PROJECT_NUM && condition.operator == ProjectQuery.Operator.EQUALS
+					&& Poise.projectSnapshots != null && Poise.contactCache == null) {
+				conditionAccess = Access.SNAPSHOT_LOOKUP;
+				cost = 1;
+			}
+			else if (getRole(condition.field) != null && condition.operator == ProjectQuery.Operator.EQUALS) {
+				conditionAccess = Access.PERSON_INDEX;
+				cost = Poise.projectIndex.count(getRole(condition.field), (String) condition.value);
+			}
+			else if (condition.field == ProjectQuery.Field.ERF_NUM && setErfRange(condition)) {
+				conditionAccess = Access.ERF_INDEX;
+				cost = Poise.erfIndex.getRange(erfFrom, erfTo).length;
+			}
+			if (conditionAccess != null && cost < estimate) {
+				access = conditionAccess;
+				indexCondition = condition;
+				estimate = cost;
+			}
+		}
+		// The ERF range may have been set by a condition that was not chosen
+		if (access == Access.ERF_INDEX) {
+			setErfRange(indexCondition);
+		}
+	}
+
+	/**
+	 * Adds archived projects, which are not in the list or the indexes, to the candidate projects.
+	 * @param archivedProjects The archived project objects that meet the conditions.
+	 */
+	public void addArchived(List<Project> archivedProjects) {
+		this.archivedProjects = archivedProjects;
+	}
+
+	/**
+	 * Runs the query.
+	 * @return The list of matching project objects, sorted and limited.
+	 */
+	public ArrayList<Project> execute() {
+		// Find the candidate projects
+		List<Project> candidates;
+		switch (access) {
+		case SNAPSHOT_LOOKUP:
+			Project project = Poise.projectSnapshots.current().get((Integer) indexCondition.value);
+			candidates = (project == null) ? new ArrayList<>() : Arrays.asList(project);
+			break;
+		case PERSON_INDEX:
+			candidates = Poise.projectIndex.getProjects(getRole(indexCondition.field), (String) indexCondition.value, false);
+			break;
+		case ERF_INDEX:
+			candidates = Poise.erfIndex.getProjects(erfFrom, erfTo);
+			break;
+		default:
+			candidates = projects;
+		}
+		if (archivedProjects != null) {
+			candidates = new ArrayList<>(candidates);
+			candidates.addAll(archivedProjects);
+		}
+
+		// Check the other conditions, then sort and limit
+		Stream<Project> stream = (access == Access.PARALLEL_SCAN) ? candidates.parallelStream() : candidates.stream();
+		stream = stream.filter(this::matches);
+		if (!query.sortFields.isEmpty()) {
+			stream = stream.sorted(getComparator());
+		}
+		if (query.limit >= 0) {
+			stream = stream.limit(query.limit);
+		}
+		return stream.collect(Collectors.toCollection(ArrayList::new));
+	}
+
+	/**
+	 * Describes the plan, one step on each line.
+	 * @return The description of the plan.
+	 */
+	public String explain() {
+		String output = "Query: " + query;
+		switch (access) {
+		case SNAPSHOT_LOOKUP:
+			output += "\nAccess:\tsnapshot lookup (" + indexCondition + ")";
+			break;
+		case PERSON_INDEX:
+			output += "\nAccess:\tproject index lookup (" + indexCondition + ")";
+			break;
+		case ERF_INDEX:
+			output += "\nAccess:\tERF index range " + erfFrom + " to " + erfTo + " (" + indexCondition + ")";
+			break;
+		case SCAN:
+			output += "\nAccess:\tscan";
+			break;
+		case PARALLEL_SCAN:
+			output += "\nAccess:\tparallel scan (" + Runtime.getRuntime().availableProcessors() + " threads)";
+		}
+		output += ", about " + estimate + " of " + projects.size() + " projects";
+		if (archivedProjects != null) {
+			output += "\nArchive:\t" + archivedProjects.size() + " archived projects read from the database";
+		}
+		for (ProjectQuery.Condition condition : query.conditions) {
+			if (condition != indexCondition) {
+				output += "\nFilter:\t" + condition;
+			}
+		}
+		for (int i = 0; i < query.sortFields.size(); i++) {
+			output += "\nSort:\t" + query.sortFields.get(i) + (query.sortDescending.get(i) ? " desc" : " asc");
+		}
+		if (query.limit >= 0) {
+			output += "\nLimit:\t" + query.limit;
+		}
+		if (query.hasSelect()) {
+			output += "\nSelect:\t" + query.selectedFields.toString().replaceAll("[\\[\\]]", "");
+		}
+		return output;
+	}
+
+	/**
+	 * Checks if a project meets the conditions that are not answered by the index.
+	 */
+	private boolean matches(Project project) {
+		for (ProjectQuery.Condition condition : query.conditions) {
+			if (condition != indexCondition && !condition.test(project)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the comparator for the sort keys. Projects without a value are sorted last.
+	 */
+	private Comparator<Project> getComparator() {
+		return (first, second) -> {
+			for (int i = 0; i < query.sortFields.size(); i++) {
+				Object firstValue = query.sortFields.get(i).get(first);
+				Object secondValue = query.sortFields.get(i).get(second);
+				int result;
+				if (firstValue == null || secondValue == null) {
+					result = (firstValue == null) ? ((secondValue == null) ? 0 : 1) : -1;
+				}
+				else {
+					result = ProjectQuery.compare(firstValue, secondValue);
+					if (query.sortDescending.get(i)) {
+						result = -result;
+					}
+				}
+				if (result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * Sets the ERF range for an ERF number condition.
+	 * @return False if the ERF index cannot answer the condition.
+	 */
+	private boolean setErfRange(ProjectQuery.Condition condition) {
+		long value = (condition.value instanceof Integer) ? (Integer) condition.value : 0;
+		long from = Integer.MIN_VALUE, to = Integer.MAX_VALUE;
+		switch (condition.operator) {
+		case EQUALS:
+			from = value;
+			to = value;
+			break;
+		case BETWEEN:
+			from = value;
+			to = (Integer) condition.secondValue;
+			break;
+		case LESS:
+			to = value - 1;
+			break;
+		case LESS_OR_EQUAL:
+			to = value;
+			break;
+		case GREATER:
+			from = value + 1;
+			break;
+		case GREATER_OR_EQUAL:
+			from = value;
+			break;
+		default:
+			return false;
+		}
+		erfFrom = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, from));
+		erfTo = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, to));
+		return true;
+	}
+
+	/**
+	 * Gets the project index role for a person field, or null for other fields.
+	 */
+	private static String getRole(ProjectQuery.Field field) {
+		switch (field) {
+		case PROJECT_MANAGER:
+			return ProjectIndex.ROLES[0];
+		case CONTRACTOR:
+			return ProjectIndex.ROLES[1];
+		case ARCHITECT:
+			return ProjectIndex.ROLES[2];
+		case CUSTOMER:
+			return ProjectIndex.ROLES[3];
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class to create a Read Replicas object.
+ * <p>
+ * Read replicas are copies of the poisePMS database that are kept up to date from the primary
+ * database. Queries that only read projects for viewing - the views of projects read from the
+ * database, and exports - are sent to the replicas in turn, so they do not slow down the updates
+ * on the primary database. All updates, and the reads that updates depend on (such as duplicate
+ * checks, the projects list loaded at startup and projects selected for editing), use the primary,
+ * as an edit to a project read from a replica that is behind could overwrite a newer change.
+ * <p>
+ * A replica may be a little behind the primary. So that a user always sees their own changes,
+ * reads go to the primary for a set time after each change (read-your-writes). The read replicas
+ * are a project listener, so they are told about each change once it has been saved.
+ * <p>
+ * Any JDBC URL can be used for a replica, so local databases (e.g. embedded H2 databases in
+ * MySQL mode, filled with the same data) can stand in for the replicas when testing.
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ReadReplicas implements ProjectListener, AutoCloseable {
+
+	// ATTRIBUTES
+	private final Connection[] connections;
+	private final Statement[] statements;
+	private final long readYourWritesNanos;
+	private final AtomicInteger next = new AtomicInteger();
+	// Time of the last change, or 0 if there has not been a change
+	private final AtomicLong lastWrite = new AtomicLong();
+	private final AtomicLong replicaReads = new AtomicLong();
+	private final AtomicLong primaryReads = new AtomicLong();
+
+	/**
+	 * Read Replicas constructor.
+	 * <p>
+	 * Connects to each replica database.
+	 * @param urls The JDBC URLs of the replica databases.
+	 * @param readYourWritesMillis The time after a change during which reads use the primary database.
+	 * @throws SQLException If the connection to a replica fails.
+	 */
+	public ReadReplicas(List<String> urls, long readYourWritesMillis) throws SQLException {
+		this.readYourWritesNanos = readYourWritesMillis * 1000000;
+		connections = new Connection[urls.size()];
+		statements = new Statement[urls.size()];
+		for (int i = 0; i < urls.size(); i++) {
+			connections[i] = Poise.connectToDatabase(urls.get(i));
+			if (connections[i] == null) {
+				throw new SQLException("The connection to replica " + i + " failed.");
+			}
+			statements[i] = connections[i].createStatement();
+		}
+	}
+
+	/**
+	 * Gets the line for a read query: a replica, or the primary if there has been a recent change.
+	 * @param primary The line to the primary database.
+	 * @return The statement to run the query on.
+	 */
+	public Statement getStatement(Statement primary) {
+		if (usePrimary()) {
+			return primary;
+		}
+		return statements[nextReplica()];
+	}
+
+	/**
+	 * Gets the connection for read queries: a replica, or the primary if there has been a recent change.
+	 * @param primary The connection to the primary database.
+	 * @return The connection to run the queries on.
+	 */
+	public Connection getConnection(Connection primary) {
+		if (usePrimary()) {
+			return primary;
+		}
+		return connections[nextReplica()];
+	}
+
+	/**
+	 * Closes the connections to the replicas.
+	 * @throws SQLException If a connection cannot be closed.
+	 */
+	public void close() throws SQLException {
+		for (int i = 0; i < connections.length; i++) {
+			statements[i].close();
+			connections[i].close();
+		}
+	}
+
+	/**
+	 * Overrides the toString method.
+	 * <p>
+	 * Builds a summary of where the read queries were sent.
+	 */
+	public String toString() {
+		return "Read replicas: " + replicaReads.get() + " reads from " + connections.length + " replicas, "
+				+ primaryReads.get() + " reads from the primary after changes";
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public void projectAdded(Project project) {
+		markWrite();
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		markWrite();
+	}
+
+	@Override
+	public void paymentAdded(Project project, double payment) {
+		markWrite();
+	}
+
+	@Override
+	public void contractorReplaced(Project project, ProjectContact oldContractor) {
+		markWrite();
+	}
+
+	@Override
+	public void projectFinalised(Project project, String oldProjectName) {
+		markWrite();
+	}
+
+	/**
+	 * Records the time of a change, so the following reads use the primary database.
+	 */
+	private void markWrite() {
+		lastWrite.set(System.nanoTime());
+	}
+
+	/**
+	 * Checks if a read must use the primary database, as a replica may not have the latest change yet.
+	 */
+	private boolean usePrimary() {
+		long last = lastWrite.get();
+		if (last != 0 && System.nanoTime() - last < readYourWritesNanos) {
+			primaryReads.incrementAndGet();
+			return true;
+		}
+		replicaReads.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Gets the number of the next replica, in turn.
+	 */
+	private int nextReplica() {
+		return Math.floorMod(next.getAndIncrement(), connections.length);
+	}
+}
@@ -0,0 +1,208 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.*;
+
+/**
+ * Class to create a Receivables Ledger object.
+ * <p>
+ * The receivables ledger keeps running totals of the fees, amounts paid, amounts outstanding
+ * and project counts - overall, and for each project manager, building type and customer.
+ * The totals are built once when the projects are loaded, and are then changed by the amount
+ * of each new project, payment or finalisation, so reading them never needs a scan of the projects.
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ReceivablesLedger implements ProjectListener {
+
+	/**
+	 * Class for the running totals of a group of projects.
+	 */
+	public static class Totals {
+		double totalFees;
+		double totalPaid;
+		int projects;
+		int openProjects;
+
+		/**
+		 * Gets the amount still owed for the projects.
+		 * @return The total fees minus the total paid.
+		 */
+		public double getOutstanding() {
+			return totalFees - totalPaid;
+		}
+
+		/**
+		 * Gets the amount paid for the projects.
+		 * @return The total paid.
+		 */
+		public double getTotalPaid() {
+			return totalPaid;
+		}
+
+		/**
+		 * Gets the number of projects.
+		 * @return The number of projects.
+		 */
+		public int getProjects() {
+			return projects;
+		}
+
+		/**
+		 * Gets the number of projects that are not finalised.
+		 * @return The number of open projects.
+		 */
+		public int getOpenProjects() {
+			return openProjects;
+		}
+
+		/**
+		 * Overrides the toString method.
+		 * <p>
+		 * Builds a single line with the totals.
+		 */
+		public String toString() {
+			DecimalFormat decimalFormat = new DecimalFormat("0.00", DecimalFormatSymbols.getInstance(Locale.US));
+			return "Projects: " + projects + " (" + openProjects + " open)\tPaid: R " + decimalFormat.format(totalPaid)
+					+ "\tOutstanding: R " + decimalFormat.format(getOutstanding());
+		}
+	}
+
+	// ATTRIBUTES
+	private final Totals overall = new Totals();
+	private final TreeMap<String, Totals> byProjectManager = new TreeMap<>();
+	private final TreeMap<String, Totals> byBuildType = new TreeMap<>();
+	private final HashMap<String, Totals> byCustomer = new HashMap<>();
+
+	/**
+	 * Adds the totals of the project objects in a list, e.g. when all projects are loaded.
+	 * @param projects The list of project objects.
+	 */
+	public synchronized void addAll(List<Project> projects) {
+		for (Project project : projects) {
+			add(project.getProjectManager(), project.getBuildType(), project.getCustomer().getContactName(),
+					1, project.isFinalised() ? 0 : 1, project.getTotalFee(), project.getTotalPaid());
+		}
+	}
+
+	/**
+	 * Adds the totals of the projects in a database, when not all projects are loaded.
+	 * <p>
+	 * The totals are calculated by the database and grouped by project manager, building type
+	 * and customer, so only one row is read for each group.
+	 * @param statement The line to the database for running queries.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public synchronized void load(Statement statement) throws SQLException {
+		ResultSet results = statement.executeQuery("SELECT projectManager, BUILDTYPE, customer, COUNT(*), "
+				+ "SUM(CASE WHEN completionDate IS NULL THEN 1 ELSE 0 END), SUM(TOTALFEE), SUM(totalPaid) "
+				+ "FROM projects GROUP BY projectManager, BUILDTYPE, customer");
+		while (results.next()) {
+			add(results.getString(1), results.getString(2), results.getString(3),
+					results.getInt(4), results.getInt(5), results.getDouble(6), results.getDouble(7));
+		}
+		results.close();
+	}
+
+	/**
+	 * Gets the totals for all projects.
+	 * @return The overall totals.
+	 */
+	public synchronized Totals getOverall() {
+		return copy(overall);
+	}
+
+	/**
+	 * Gets the totals for each project manager.
+	 * @return A map of project manager names to totals, in name order.
+	 */
+	public synchronized Map<String, Totals> getByProjectManager() {
+		return copy(byProjectManager);
+	}
+
+	/**
+	 * Gets the totals for each building type.
+	 * @return A map of building types to totals, in name order.
+	 */
+	public synchronized Map<String, Totals> getByBuildType() {
+		return copy(byBuildType);
+	}
+
+	/**
+	 * Gets the totals for a customer.
+	 * @param customerName The customer's name (not case sensitive).
+	 * @return The customer's totals, or null if the customer has no projects.
+	 */
+	public synchronized Totals getByCustomer(String customerName) {
+		Totals totals = byCustomer.get(customerName.toLowerCase());
+		return (totals == null) ? null : copy(totals);
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public synchronized void projectAdded(Project project) {
+		add(project.getProjectManager(), project.getBuildType(), project.getCustomer().getContactName(),
+				1, project.isFinalised() ? 0 : 1, project.getTotalFee(), project.getTotalPaid());
+	}
+
+	@Override
+	public void deadlineChanged(Project project, Date oldDeadline) {
+		// Deadlines do not change the totals
+	}
+
+	@Override
+	public synchronized void paymentAdded(Project project, double payment) {
+		add(project.getProjectManager(), project.getBuildType(), project.getCustomer().getContactName(),
+				0, 0, 0, payment);
+	}
+
+	@Override
+	public void contractorReplaced(Project project, ProjectContact oldContractor) {
+		// Contractors do not change the totals
+	}
+
+	@Override
+	public synchronized void projectFinalised(Project project, String oldProjectName) {
+		add(project.getProjectManager(), project.getBuildType(), project.getCustomer().getContactName(),
+				0, -1, 0, 0);
+	}
+
+	/**
+	 * Adds changes to the overall totals and the totals of each group the project belongs to.
+	 */
+	private void add(String projectManager, String buildType, String customerName, int projects, int openProjects, double totalFees, double totalPaid) {
+		add(overall, projects, openProjects, totalFees, totalPaid);
+		add(byProjectManager.computeIfAbsent(String.valueOf(projectManager), key -> new Totals()), projects, openProjects, totalFees, totalPaid);
+		add(byBuildType.computeIfAbsent(String.valueOf(buildType), key -> new Totals()), projects, openProjects, totalFees, totalPaid);
+		add(byCustomer.computeIfAbsent(String.valueOf(customerName).toLowerCase(), key -> new Totals()), projects, openProjects, totalFees, totalPaid);
+	}
+
+	private static void add(Totals totals, int projects, int openProjects, double totalFees, double totalPaid) {
+		totals.projects += projects;
+		totals.openProjects += openProjects;
+		totals.totalFees += totalFees;
+		totals.totalPaid += totalPaid;
+	}
+
+	/**
+	 * Copies totals, so that callers do not see later changes.
+	 */
+	private static Totals copy(Totals totals) {
+		Totals copy = new Totals();
+		add(copy, totals.projects, totals.openProjects, totals.totalFees, totals.totalPaid);
+		return copy;
+	}
+
+	private static Map<String, Totals> copy(Map<String, Totals> totals) {
+		TreeMap<String, Totals> copy = new TreeMap<>();
+		for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+			copy.put(entry.getKey(), copy(entry.getValue()));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,332 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class to create a Startup Loader object.
+ * <p>
+ * The startup loader connects to the database and loads the projects in the background, so
+ * the main menu can be shown straight away. The work is done in two steps:
+ * <ul>
+ * <li>Connecting - the database (or shard) connections are opened, the optional project cache,
+ * contact cache and journal are created, and the ERF numbers and contact names are loaded.
+ * This is all that is needed to add a new project.</li>
+ * <li>Loading - all projects are read on a separate connection (or replayed from the journal),
+ * while the main thread can use the main connection.</li>
+ * </ul>
+ * Menu options wait for the step they need, printing the progress while they wait. The loaded
+ * projects are then merged into the projects list on the main thread.
+ *
+ * @author Lindsey
+ * @see Poise
+ */
+public class StartupLoader {
+
+	// Time between progress messages
+	private static final long PROGRESS_MILLIS = 500;
+
+	/** Number of project rows read from the database, shown as the load progress. */
+	static final AtomicLong projectsRead = new AtomicLong();
+
+	// ATTRIBUTES
+	private final String[] args;
+	private final CompletableFuture<Void> connected;
+	private final CompletableFuture<ArrayList<Project>> loaded;
+	private Connection connection;
+	private Statement statement;
+	private volatile long totalProjects = -1;
+	private boolean merged = false;
+
+	/**
+	 * Startup Loader constructor.
+	 * <p>
+	 * Starts connecting and loading in the background.
+	 * @param args The command line arguments, which select the connection and loading options.
+	 */
+	public StartupLoader(String[] args) {
+		this.args = args;
+		connected = CompletableFuture.runAsync(() -> {
+			try {
+				connect();
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		loaded = connected.thenApplyAsync(ignored -> {
+			try {
+				return load();
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Gets the connection to the database, waiting until it has been opened.
+	 * @return The connection to the database (shard 0 if shards are in use).
+	 * @throws SQLException If the connection failed.
+	 * @throws IOException If the journal could not be opened.
+	 */
+	public Connection getConnection() throws SQLException, IOException {
+		await(connected, "Connecting to the database");
+		return connection;
+	}
+
+	/**
+	 * Gets the line to the database for running queries, waiting until the connection has been opened.
+	 * @return The statement for the main connection.
+	 * @throws SQLException If the connection failed.
+	 * @throws IOException If the journal could not be opened.
+	 */
+	public Statement getStatement() throws SQLException, IOException {
+		await(connected, "Connecting to the database");
+		return statement;
+	}
+
+	/**
+	 * Checks if the loaded projects have been merged into the projects list.
+	 * @return True once mergeProjects has completed.
+	 */
+	public boolean isMerged() {
+		return merged;
+	}
+
+	/**
+	 * Waits for the projects to be loaded, and adds them to the projects list.
+	 * <p>
+	 * Projects that were added to the list while the projects were loading are not added twice.
+	 * Must be called on the main thread.
+	 * @param projects The projects list used by the menus.
+	 * @return True if the projects were merged by this call, false if they were already merged.
+	 * @throws SQLException If the projects could not be loaded.
+	 * @throws IOException If the journal could not be read.
+	 */
+	public boolean mergeProjects(ArrayList<Project> projects) throws SQLException, IOException {
+		if (merged) {
+			return false;
+		}
+		ArrayList<Project> loadedProjects = await(loaded, "Loading projects");
+		HashSet<Integer> added = new HashSet<>();
+		for (Project project : projects) {
+			added.add(project.getProjectNum());
+		}
+		ArrayList<Project> merge = new ArrayList<>(loadedProjects.size() + projects.size());
+		for (Project project : loadedProjects) {
+			if (!added.contains(project.getProjectNum())) {
+				merge.add(project);
+			}
+		}
+		merge.addAll(projects);
+		projects.clear();
+		projects.addAll(merge);
+		merged = true;
+		return true;
+	}
+
+	/**
+	 * Finds a project in the database by number, for checks made before the projects are merged.
+	 * @param projectNum The project number to search for.
+	 * @return The project object, or null if no project has the project number.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public Project findProject(int projectNum) throws SQLException {
+		ResultSet results = statement.executeQuery(Poise.getProjectQuery()
+				+ " WHERE projects.PROJECTNUM = '" + projectNum + "'");
+		Project project = results.next() ? Poise.createProject(results) : null;
+		results.close();
+		return project;
+	}
+
+	/**
+	 * Opens the connections and creates the objects needed to add projects.
+	 */
+	private void connect() throws SQLException, IOException {
+		// Connect to database, unless the projects are split across shards
+		String shardUrls = Poise.getOption(args, "--shards");
+		if (shardUrls != null) {
+			Poise.projectShards = new ProjectShards(Arrays.asList(shardUrls.split(",")));
+			// Shard 0 is used for anything that is not routed by project number
+			connection = Poise.projectShards.getConnection(0);
+		}
+		else {
+			connection = Poise.connectToDatabase();
+		}
+		if (connection == null) {
+			throw new SQLException("The connection to the database failed.");
+		}
+
+		/* Direct line to poisePMS database to run queries
+		 * and execute updates*/
+		statement = connection.createStatement();
+
+		// Send the viewing queries to the read replicas if required
+		String replicaUrls = Poise.getOption(args, "--replicas");
+		if (replicaUrls != null && Poise.projectShards == null) {
+			String replicaLag = Poise.getOption(args, "--replica-lag");
+			Poise.readReplicas = new ReadReplicas(Arrays.asList(replicaUrls.split(",")),
+					(replicaLag == null) ? 5000 : Long.parseLong(replicaLag));
+			Poise.projectListeners.add(Poise.readReplicas);
+		}
+
+		// Use the unified contacts table if every database has been migrated to it
+		boolean unified = true;
+		for (Connection databaseConnection : (Poise.projectShards != null) ? Poise.projectShards.getConnections() : Arrays.asList(connection)) {
+			unified = unified && UnifiedContacts.hasContactsTable(databaseConnection);
+		}
+		Poise.unifiedContacts = unified;
+
+		/* Load contact details on demand if required (also with the unified contacts table, which is then read
+		 * without joins, unless the text is off the heap, where each contact must only be created once)*/
+		if ((Poise.hasOption(args, "--lazy-contacts") || (Poise.unifiedContacts && Project.textArena == null))
+				&& Poise.projectShards == null) {
+			Poise.contactCache = new ContactCache(connection.createStatement());
+		}
+
+		// Record changes in the journal if required
+		String journalDirectory = Poise.getOption(args, "--journal");
+		if (journalDirectory != null) {
+			Poise.projectJournal = new ProjectJournal(Paths.get(journalDirectory), 1000);
+			Poise.projectListeners.add(Poise.projectJournal);
+		}
+
+		// Publish changes for other systems if required
+		String changesDirectory = Poise.getOption(args, "--changes");
+		if (changesDirectory != null) {
+			Poise.changeStream = new ChangeStream(Paths.get(changesDirectory));
+			Poise.projectListeners.add(Poise.changeStream);
+		}
+
+		// Use the project cache if a cache size was set
+		String cacheSize = Poise.getOption(args, "--cache");
+		if (cacheSize != null && Poise.projectShards == null) {
+			Poise.projectCache = new ProjectCache(statement, Integer.parseInt(cacheSize));
+		}
+
+		// Keep finalised projects in the archive if required (only when all projects are loaded from the database)
+		String archiveDirectory = Poise.getOption(args, "--archive");
+		if (archiveDirectory != null && Poise.projectShards == null && Poise.projectCache == null && Poise.projectJournal == null) {
+			Poise.projectArchive = new ProjectArchive(Paths.get(archiveDirectory));
+		}
+
+		// Add projects with one call to the add_project procedure if every database has it
+		boolean procedure = true;
+		for (Connection databaseConnection : (Poise.projectShards != null) ? Poise.projectShards.getConnections() : Arrays.asList(connection)) {
+			procedure = procedure && Poise.hasAddProjectProcedure(databaseConnection);
+		}
+		Poise.addProjectProcedure = procedure;
+
+		// Index the ERF numbers of all sites and the contact names (in every shard)
+		if (Poise.projectShards != null) {
+			for (Connection shardConnection : Poise.projectShards.getConnections()) {
+				Statement shardStatement = shardConnection.createStatement();
+				Poise.erfIndex.load(shardStatement);
+				Poise.contactNames.load(shardStatement);
+				shardStatement.close();
+			}
+		}
+		else {
+			Poise.erfIndex.load(statement);
+			Poise.contactNames.load(statement);
+		}
+	}
+
+	/**
+	 * Loads all projects, unless the project cache or shards are in use.
+	 */
+	private ArrayList<Project> load() throws SQLException, IOException {
+		if (Poise.projectShards != null || Poise.projectCache != null) {
+			// Projects are read from the database when they are selected
+			return new ArrayList<>();
+		}
+
+		/* Load on a separate connection, so the main connection can be used while loading. The loaded
+		 * projects are edited, so they are read from the primary database, never from a read replica.*/
+		Connection loadConnection = Poise.connectToDatabase();
+		if (loadConnection == null) {
+			throw new SQLException("The connection to the database failed.");
+		}
+		try (Statement loadStatement = loadConnection.createStatement()) {
+			if (Poise.projectJournal != null && Poise.projectJournal.hasState()) {
+				// Rebuild the projects from the journal instead of the database, unless the database has changed since
+				ArrayList<Project> replayed = Poise.projectJournal.replay();
+				if (Poise.projectJournal.matchesDatabase(replayed, loadStatement)) {
+					return replayed;
+				}
+			}
+			
+			// Only the open projects are loaded when finalised projects are archived
+			String condition = "";
+			if (Poise.projectArchive != null) {
+				Poise.projectArchive.update(loadStatement);
+				condition = Poise.INCOMPLETE_CONDITION;
+			}
+			
+			ResultSet results = loadStatement.executeQuery("SELECT COUNT(*) FROM projects" + condition);
+			if (results.next()) {
+				totalProjects = results.getLong(1);
+			}
+			results.close();
+			if (Poise.projectArchive != null) {
+				return Poise.getProjects(loadStatement, condition);
+			}
+
+			// Load with several connections at once if required
+			String workers = Poise.getOption(args, "--parallel");
+			if (workers != null) {
+				return new ParallelProjectLoader(Integer.parseInt(workers)).getProjects(loadStatement);
+			}
+			return Poise.getProjects(loadStatement);
+		} finally {
+			loadConnection.close();
+		}
+	}
+
+	/**
+	 * Waits for a step to complete, printing the progress until it does.
+	 */
+	private <T> T await(CompletableFuture<T> future, String task) throws SQLException, IOException {
+		boolean waited = false;
+		while (true) {
+			try {
+				T result = future.get(PROGRESS_MILLIS, TimeUnit.MILLISECONDS);
+				if (waited) {
+					System.out.println(" done.");
+				}
+				return result;
+			} catch (TimeoutException e) {
+				// Still running - print the progress
+				long read = projectsRead.get();
+				long total = totalProjects;
+				System.out.print((waited ? "\r" : "") + task + "..." + ((read > 0)
+						? " " + read + ((total > 0) ? " of " + total : "") + " projects" : ""));
+				waited = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException(task + " was interrupted.", e);
+			} catch (ExecutionException e) {
+				if (waited) {
+					System.out.println();
+				}
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException) {
+					throw (SQLException) cause;
+				}
+				if (cause instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) cause).getCause();
+				}
+				throw new SQLException(task + " failed.", cause);
+			}
+		}
+	}
+}
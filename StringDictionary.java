@@ -0,0 +1,61 @@
+import java.util.*;
+
+/**
+ * Class to create a String Dictionary object.
+ * <p>
+ * A string dictionary gives each distinct string a small integer code, so that values
+ * repeated across many project objects (such as building types and project managers)
+ * are stored once and each project only holds the code.
+ * <p>
+ * Codes are never removed, so the dictionary should only be used for values with a
+ * limited number of distinct strings.
+ *
+ * @author Lindsey
+ * @see Project
+ */
+public class StringDictionary {
+
+	// ATTRIBUTES
+	private final HashMap<String, Integer> codes = new HashMap<>();
+	private String[] values = new String[16];
+	private int size = 0;
+
+	/**
+	 * Gets the code for a string, adding the string if it is new.
+	 * @param value The string value. Null is given the code -1.
+	 * @return The integer code for the string.
+	 */
+	public synchronized int encode(String value) {
+		if (value == null) {
+			return -1;
+		}
+		Integer code = codes.get(value);
+		if (code == null) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			code = size;
+			values[size] = value;
+			size += 1;
+			codes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the string for a code.
+	 * @param code The integer code returned by encode.
+	 * @return The string value, or null for the code -1.
+	 */
+	public synchronized String decode(int code) {
+		return (code < 0) ? null : values[code];
+	}
+
+	/**
+	 * Gets the number of distinct strings in the dictionary.
+	 * @return The number of strings.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
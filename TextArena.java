@@ -0,0 +1,122 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Class to create a Text Arena object.
+ * <p>
+ * A text arena stores text values UTF-8 encoded outside the Java heap, so that the contact
+ * details, addresses and project names of many projects do not fill the heap and do not
+ * have to be copied by the garbage collector. The text is kept in direct byte buffers of
+ * 1 MB (segments), one value after another. Each record is given a handle, made of the
+ * segment number and the position in the segment, and the objects only hold the handle.
+ * <p>
+ * A record holds one or more values, each stored as its length in bytes (-1 for null)
+ * followed by the bytes. The strings are decoded each time they are read.
+ * <p>
+ * The arena is append only. Records are never removed, so a value that is replaced
+ * (e.g. a project name when the project is finalised) keeps its space until the program exits.
+ *
+ * @author Lindsey
+ * @see Project
+ * @see ProjectContact
+ */
+public class TextArena {
+
+	/** Handle for a value that is not stored in the arena. */
+	static final long NO_TEXT = -1;
+
+	// Size of each segment, unless a record is larger
+	private static final int SEGMENT_SIZE = 1 << 20;
+
+	// ATTRIBUTES
+	private volatile ByteBuffer[] segments = new ByteBuffer[0];
+	private ByteBuffer current = null;
+	private long bytes = 0;
+	private long records = 0;
+
+	/**
+	 * Stores values in a new record.
+	 * @param values The string values, which may be null.
+	 * @return The handle for the record.
+	 */
+	public synchronized long put(String... values) {
+		byte[][] encoded = new byte[values.length][];
+		int length = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+				length += encoded[i].length;
+			}
+			length += 4;
+		}
+
+		// Start a new segment if the record does not fit
+		if (current == null || current.remaining() < length) {
+			current = ByteBuffer.allocateDirect(Math.max(SEGMENT_SIZE, length));
+			ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+			grown[segments.length] = current;
+			segments = grown;
+		}
+		long handle = ((long) (segments.length - 1) << 32) | current.position();
+		for (byte[] value : encoded) {
+			if (value == null) {
+				current.putInt(-1);
+			}
+			else {
+				current.putInt(value.length).put(value);
+			}
+		}
+		bytes += length;
+		records += 1;
+		return handle;
+	}
+
+	/**
+	 * Gets a value from a record.
+	 * @param handle The handle returned by put.
+	 * @param index The position of the value in the record, from 0.
+	 * @return The string value, or null.
+	 */
+	public String get(long handle, int index) {
+		if (handle == NO_TEXT) {
+			return null;
+		}
+		// Absolute reads do not change the buffer, so the segments can be read by many threads
+		ByteBuffer segment = segments[(int) (handle >>> 32)];
+		int position = (int) handle;
+		for (int i = 0; i < index; i++) {
+			position += 4 + Math.max(0, segment.getInt(position));
+		}
+		int length = segment.getInt(position);
+		if (length < 0) {
+			return null;
+		}
+		byte[] value = new byte[length];
+		segment.get(position + 4, value);
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets the value from a record with one value.
+	 * @param handle The handle returned by put.
+	 * @return The string value, or null.
+	 */
+	public String get(long handle) {
+		return get(handle, 0);
+	}
+
+	/**
+	 * Overrides the toString method.
+	 * <p>
+	 * Builds a summary of the off-heap memory used.
+	 */
+	public synchronized String toString() {
+		long allocated = 0;
+		for (ByteBuffer segment : segments) {
+			allocated += segment.capacity();
+		}
+		return "Text arena: " + records + " records, " + bytes + " bytes used, " + allocated + " bytes off-heap in "
+				+ segments.length + " segments";
+	}
+}
@@ -0,0 +1,241 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Class to create a Unified Contacts object.
+ * <p>
+ * The customers, contractors and architects tables have the same columns. They can be replaced
+ * by one contacts table, keyed by a contact id, with a roles column that lists the roles of each
+ * contact ("Customer", "Contractor" and/or "Architect"). One contact can then be the customer of
+ * one project and the contractor of another, without being stored twice. The contact names stay
+ * unique, and the projects table still refers to contacts by name, so the searches by name work
+ * as before.
+ * <p>
+ * When the database has the contacts table, projects are loaded from the projects and sites tables
+ * only, and the contact cache reads the contacts of a list of projects with one query on the
+ * contact name index, whatever their roles. This class builds the SQL used for the contacts table.
+ * <p>
+ * Run from the command line to migrate a database:
+ * <pre>
+ * java UnifiedContacts [--url=jdbc:...]
+ * </pre>
+ * The contacts are copied to the contacts table, contacts with the same name and details in more
+ * than one table are merged, the project foreign keys are moved to the contacts table and the
+ * three tables are dropped. The add_project procedure is recreated if the database has it. If a
+ * name is in more than one table with different details, the conflicts are listed and the
+ * database is not changed, as only one set of details could be kept.
+ *
+ * @author Lindsey
+ * @see ContactCache
+ * @see Poise
+ */
+public class UnifiedContacts {
+
+	/** The contact roles, with the tables and project columns that held each role before the migration. */
+	static final String[] ROLES = {"Customer", "Contractor", "Architect"};
+	private static final String[] TABLES = {"customers", "contractors", "architects"};
+	private static final String[] COLUMNS = {"customer", "contractor", "architect"};
+
+	/** The CREATE TABLE statement for the contacts table, which works in MySQL and in H2 in MySQL mode. */
+	static final String CONTACTS_TABLE = "CREATE TABLE contacts (contactId INT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+			+ "contactName VARCHAR(50) NOT NULL, roles VARCHAR(40) NOT NULL, Telephone VARCHAR(20), "
+			+ "Email VARCHAR(50), Address VARCHAR(50), UNIQUE (contactName))";
+
+	/**
+	 * Checks if a database has the contacts table.
+	 * @param connection The connection to the database.
+	 * @return True if the contacts table exists.
+	 */
+	static boolean hasContactsTable(Connection connection) {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeQuery("SELECT contactId FROM contacts WHERE 1 = 0").close();
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the condition for the contacts that have a role.
+	 * @param role The role - "Customer", "Contractor" or "Architect".
+	 * @return The condition, for a WHERE clause.
+	 */
+	static String hasRole(String role) {
+		return "CONCAT(',', roles, ',') LIKE '%," + role + ",%'";
+	}
+
+	/**
+	 * Builds the statement that adds a contact with a role.
+	 * <p>
+	 * If a contact with the name already exists, the role is added to the contact, and the
+	 * existing details are kept. The program loads the stored details of an existing contact
+	 * when it is entered, so the contact object must already have them.
+	 * @param projectContact The project contact object.
+	 * @return The INSERT statement.
+	 */
+	static String insert(ProjectContact projectContact) {
+		String role = projectContact.getContact();
+		return "INSERT INTO contacts (contactName, roles, Telephone, Email, Address) VALUES('"
+				+ projectContact.getContactName() + "','" + role + "','" + projectContact.getPhone() + "','"
+				+ projectContact.getEmail() + "','" + projectContact.getContactAddress() + "') "
+				+ "ON DUPLICATE KEY UPDATE roles = CASE WHEN " + hasRole(role) + " THEN roles "
+				+ "ELSE CONCAT(roles, '," + role + "') END";
+	}
+
+	/**
+	 * Builds the statements that remove a role from contacts that no project uses in that role,
+	 * and delete the contacts that are left without a role.
+	 * @param role The role - "Customer", "Contractor" or "Architect".
+	 * @param quotedNames The contact names, each in single quotes.
+	 * @return The UPDATE and DELETE statements, to be run in order.
+	 */
+	static String[] removeRole(String role, Collection<String> quotedNames) {
+		String names = String.join(", ", quotedNames);
+		String column = COLUMNS[Arrays.asList(ROLES).indexOf(role)];
+		return new String[] {
+				"UPDATE contacts SET roles = TRIM(BOTH ',' FROM REPLACE(CONCAT(',', roles, ','), '," + role + ",', ',')) "
+						+ "WHERE contactName IN (" + names + ") AND contactName NOT IN (SELECT " + column + " FROM projects)",
+				"DELETE FROM contacts WHERE contactName IN (" + names + ") AND roles = ''"};
+	}
+
+	/**
+	 * Finds the contact names that are in more than one of the old tables with different details.
+	 * <p>
+	 * Names are compared as in the database (not case sensitive), and a missing value only
+	 * matches another missing value.
+	 * @param statement The line to the database for running queries.
+	 * @return A line for each conflict, with the tables and the details in each.
+	 * @throws SQLException If a database error occurs.
+	 */
+	static ArrayList<String> findConflicts(Statement statement) throws SQLException {
+		ArrayList<String> conflicts = new ArrayList<>();
+		for (int i = 0; i < TABLES.length; i++) {
+			for (int j = i + 1; j < TABLES.length; j++) {
+				ResultSet results = statement.executeQuery("SELECT a." + COLUMNS[i]
+						+ ", a.Telephone, a.Email, a.Address, b.Telephone, b.Email, b.Address FROM " + TABLES[i] + " a JOIN "
+						+ TABLES[j] + " b ON a." + COLUMNS[i] + " = b." + COLUMNS[j] + " WHERE COALESCE(a.Telephone, '') <> COALESCE(b.Telephone, '') "
+						+ "OR COALESCE(a.Email, '') <> COALESCE(b.Email, '') OR COALESCE(a.Address, '') <> COALESCE(b.Address, '')");
+				while (results.next()) {
+					conflicts.add(results.getString(1) + " - " + TABLES[i] + ": " + results.getString(2) + ", "
+							+ results.getString(3) + ", " + results.getString(4) + "; " + TABLES[j] + ": "
+							+ results.getString(5) + ", " + results.getString(6) + ", " + results.getString(7));
+				}
+				results.close();
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Moves the contacts of a database to the contacts table.
+	 * <p>
+	 * The contacts are copied in one transaction. The table changes that follow cannot be rolled
+	 * back in MySQL, so the database should be backed up first.
+	 * <p>
+	 * Nothing is changed if a name is in more than one table with different details (see
+	 * {@link #findConflicts(Statement)}), as merging the rows would lose one set of details.
+	 * @param connection The connection to the database used to control changes committed.
+	 * @param statement The line to the database for running updates.
+	 * @return The number of contacts in the contacts table.
+	 * @throws SQLException If a database error occurs, or if contacts with the same name have different details.
+	 */
+	public static int migrate(Connection connection, Statement statement) throws SQLException {
+		int conflicts = findConflicts(statement).size();
+		if (conflicts > 0) {
+			throw new SQLException(conflicts + " contact names are in more than one table with different details.");
+		}
+		statement.executeUpdate(CONTACTS_TABLE);
+
+		// Copy the contacts, adding the role to contacts that are already in the table
+		connection.setAutoCommit(false);
+		try {
+			for (int i = 0; i < ROLES.length; i++) {
+				statement.executeUpdate("UPDATE contacts SET roles = CONCAT(roles, '," + ROLES[i] + "') "
+						+ "WHERE contactName IN (SELECT " + COLUMNS[i] + " FROM " + TABLES[i] + ")");
+				statement.executeUpdate("INSERT INTO contacts (contactName, roles, Telephone, Email, Address) "
+						+ "SELECT " + COLUMNS[i] + ", '" + ROLES[i] + "', Telephone, Email, Address FROM " + TABLES[i]
+						+ " WHERE " + COLUMNS[i] + " NOT IN (SELECT contactName FROM contacts)");
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			connection.setAutoCommit(true);
+			statement.executeUpdate("DROP TABLE contacts");
+			throw e;
+		}
+		connection.setAutoCommit(true);
+
+		// Move the project foreign keys from the old tables to the contacts table
+		DatabaseMetaData metaData = connection.getMetaData();
+		LinkedHashSet<String> foreignKeys = new LinkedHashSet<>();
+		for (String projectsTable : new String[] {"projects", "PROJECTS"}) {
+			try (ResultSet keys = metaData.getImportedKeys(connection.getCatalog(), null, projectsTable)) {
+				while (keys.next()) {
+					if (Arrays.asList(TABLES).contains(keys.getString("PKTABLE_NAME").toLowerCase())) {
+						foreignKeys.add(keys.getString("FK_NAME"));
+					}
+				}
+			}
+		}
+		for (String foreignKey : foreignKeys) {
+			statement.executeUpdate("ALTER TABLE projects DROP FOREIGN KEY " + foreignKey);
+		}
+		for (String column : COLUMNS) {
+			statement.executeUpdate("ALTER TABLE projects ADD FOREIGN KEY (" + column + ") REFERENCES contacts (contactName)");
+		}
+		for (String table : TABLES) {
+			statement.executeUpdate("DROP TABLE " + table);
+		}
+
+		// The procedure inserted into the old tables
+		if (Poise.hasAddProjectProcedure(connection)) {
+			DataGenerator.createProcedures(statement);
+		}
+
+		ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM contacts");
+		results.next();
+		int contacts = results.getInt(1);
+		results.close();
+		return contacts;
+	}
+
+	/**
+	 * Migrates a database from the command line.
+	 * <p>
+	 * Arguments: --url=JDBC URL (default the poisePMS database).
+	 * @param args The command line arguments.
+	 */
+	public static void main(String[] args) {
+		String url = Poise.getOption(args, "--url");
+		Connection connection = (url == null) ? Poise.connectToDatabase() : Poise.connectToDatabase(url);
+		if (connection == null) {
+			return;
+		}
+		try (Statement statement = connection.createStatement()) {
+			if (hasContactsTable(connection)) {
+				System.out.println("The database already has the contacts table.");
+			}
+			else if (!findConflicts(statement).isEmpty()) {
+				System.out.println("Error! These contacts are in more than one table with different details:");
+				for (String conflict : findConflicts(statement)) {
+					System.out.println(conflict);
+				}
+				System.out.println("Make the details the same, or rename one of the contacts, then migrate again. "
+						+ "The database has not been changed.");
+			}
+			else {
+				long start = System.nanoTime();
+				int contacts = migrate(connection, statement);
+				System.out.println(contacts + " contacts migrated in " + ((System.nanoTime() - start) / 1000000) + " ms.");
+			}
+			connection.close();
+		} catch (SQLException e) {
+			System.out.println("Error! The contacts could not be migrated.");
+			e.printStackTrace();
+		}
+	}
+}
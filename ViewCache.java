@@ -0,0 +1,183 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Class to create a View Cache object.
+ * <p>
+ * The view cache keeps the printed text of the incomplete and overdue project views, so that
+ * viewing them again does not filter the projects list or build each project's text again.
+ * The text of each open project is kept separately. When a project is added or changed, only
+ * that project's text is built again, and when it is finalised it is removed. The overdue view
+ * is also built again when the date changes, as projects become overdue at midnight.
+ * <p>
+ * The view cache is only used when all projects are loaded.
+ *
+ * @author Lindsey
+ * @see ProjectListener
+ * @see Poise
+ */
+public class ViewCache implements ProjectListener {
+
+	/**
+	 * Class for the printed text of a view and the number of projects in it.
+	 */
+	public static class View {
+		final String text;
+		final int projects;
+
+		View(String text, int projects) {
+			this.text = text;
+			this.projects = projects;
+		}
+
+		/**
+		 * Gets the printed text of the projects in the view.
+		 * @return The text of each project, followed by a new line.
+		 */
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * Gets the number of projects in the view.
+		 * @return The number of projects.
+		 */
+		public int getProjects() {
+			return projects;
+		}
+	}
+
+	// ATTRIBUTES
+	// Text of each open project, in the order of the projects list (null until the project is printed)
+	private final LinkedHashMap<Project, String> openProjects = new LinkedHashMap<>();
+	private View incomplete = null;
+	private View overdue = null;
+	private long overdueDay = -1;
+	private long hits = 0, builds = 0;
+
+	/**
+	 * View Cache constructor.
+	 * @param projects The list of all project objects.
+	 */
+	public ViewCache(List<Project> projects) {
+		for (Project project : projects) {
+			if (!project.isFinalised()) {
+				openProjects.put(project, null);
+			}
+		}
+	}
+
+	/**
+	 * Gets the view of the projects that are not finalised.
+	 * @return The incomplete projects view.
+	 * @throws SQLException If a database error occurs while loading contact details.
+	 */
+	public synchronized View getIncomplete() throws SQLException {
+		if (incomplete != null) {
+			hits += 1;
+			return incomplete;
+		}
+		builds += 1;
+		render();
+		StringBuilder text = new StringBuilder();
+		for (String projectText : openProjects.values()) {
+			text.append(projectText).append('\n');
+		}
+		incomplete = new View(text.toString(), openProjects.size());
+		return incomplete;
+	}
+
+	/**
+	 * Gets the view of the projects that are not finalised and are past their deadline.
+	 * @return The overdue projects view.
+	 * @throws SQLException If a database error occurs while loading contact details.
+	 */
+	public synchronized View getOverdue() throws SQLException {
+		long today = LocalDate.now().toEpochDay();
+		if (overdue != null && overdueDay == today) {
+			hits += 1;
+			return overdue;
+		}
+		builds += 1;
+		render();
+		StringBuilder text = new StringBuilder();
+		int count = 0;
+		for (Map.Entry<Project, String> entry : openProjects.entrySet()) {
+			if (entry.getKey().getDeadlineDay() <= today) {
+				text.append(entry.getValue()).append('\n');
+				count += 1;
+			}
+		}
+		overdue = new View(text.toString(), count);
+		overdueDay = today;
+		return overdue;
+	}
+
+	// EVENTS ---->
+
+	@Override
+	public synchronized void projectAdded(Project project) {
+		changed(project);
+	}
+
+	@Override
+	public synchronized void deadlineChanged(Project project, Date oldDeadline) {
+		changed(project);
+	}
+
+	@Override
+	public synchronized void paymentAdded(Project project, double payment) {
+		changed(project);
+	}
+
+	@Override
+	public synchronized void contractorReplaced(Project project, ProjectContact oldContractor) {
+		changed(project);
+	}
+
+	@Override
+	public synchronized void projectFinalised(Project project, String oldProjectName) {
+		if (openProjects.containsKey(project)) {
+			openProjects.remove(project);
+			incomplete = null;
+			overdue = null;
+		}
+	}
+
+	/**
+	 * Overrides the toString method.
+	 * <p>
+	 * Builds a summary of how many views were printed from the cache.
+	 */
+	public synchronized String toString() {
+		return "View cache: " + hits + " cached views, " + builds + " views built, " + openProjects.size() + " open projects";
+	}
+
+	/**
+	 * Marks a project's text to be built again, and the views that include it.
+	 */
+	private void changed(Project project) {
+		if (!project.isFinalised()) {
+			openProjects.put(project, null);
+			incomplete = null;
+			overdue = null;
+		}
+	}
+
+	/**
+	 * Builds the text of the projects that have changed, loading their contact details together first.
+	 */
+	private void render() throws SQLException {
+		ArrayList<Project> changed = new ArrayList<>();
+		for (Map.Entry<Project, String> entry : openProjects.entrySet()) {
+			if (entry.getValue() == null) {
+				changed.add(entry.getKey());
+			}
+		}
+		Poise.loadContacts(changed);
+		for (Project project : changed) {
+			openProjects.put(project, project.toString());
+		}
+	}
+}
@@ -0,0 +1,299 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class to create a Workload Driver object.
+ * <p>
+ * The workload driver simulates many users working at the same time, to measure how the program
+ * performs with a realistic amount of data. Each simulated user has its own database connection
+ * and runs a weighted mix of operations - project lookups, payments, deadline changes, contractor
+ * updates and finalisations - through the same Poise methods as the menus, with the input given
+ * by a Scanner on a string instead of the keyboard. The open projects are split between the users,
+ * so no two users edit the same project. Project snapshots are always kept, so the lookups read
+ * copies from the latest snapshot instead of project objects that other users are changing.
+ * <p>
+ * The throughput and the 50th, 95th and 99th percentile times of each operation are printed at the end.
+ * <p>
+ * Run from the command line (the H2 jar must be on the classpath for the default embedded database):
+ * <pre>
+ * java WorkloadDriver [--url=jdbc:...] [--generate=10000] [--users=8] [--operations=1000]
+ *                     [--seed=42] [--mix=50,20,15,10,5]
+ * </pre>
+ *
+ * @author Lindsey
+ * @see DataGenerator
+ * @see Poise
+ */
+public class WorkloadDriver {
+
+	/** The embedded database used when no URL is given. */
+	static final String EMBEDDED_URL = "jdbc:h2:mem:poisepms;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	private static final String[] OPERATIONS = {"lookup", "payment", "deadline", "contractor", "finalise"};
+	private static final int LOOKUP = 0, PAYMENT = 1, DEADLINE = 2, CONTRACTOR = 3, FINALISE = 4;
+
+	// ATTRIBUTES
+	private final String url;
+	private final int users;
+	private final int operationsPerUser;
+	private final int[] weights;
+	private final long seed;
+
+	/**
+	 * Workload Driver constructor.
+	 * @param url The JDBC URL of the database.
+	 * @param users The number of simulated users.
+	 * @param operationsPerUser The number of operations each user runs.
+	 * @param weights The relative weights of lookups, payments, deadline changes, contractor updates and finalisations.
+	 * @param seed The seed for choosing operations and projects.
+	 */
+	public WorkloadDriver(String url, int users, int operationsPerUser, int[] weights, long seed) {
+		this.url = url;
+		this.users = users;
+		this.operationsPerUser = operationsPerUser;
+		this.weights = weights;
+		this.seed = seed;
+	}
+
+	/**
+	 * Loads the projects and runs the workload.
+	 * @throws SQLException If a database error occurs.
+	 */
+	public void run() throws SQLException {
+		Connection connection = Poise.connectToDatabase(url);
+		if (connection == null) {
+			return;
+		}
+		Statement statement = connection.createStatement();
+
+		// Load the projects and build the indexes, as at startup
+		Poise.unifiedContacts = UnifiedContacts.hasContactsTable(connection);
+		long loadStart = System.nanoTime();
+		ArrayList<Project> projects = Poise.getProjects(statement);
+		Poise.erfIndex.load(statement);
+		Poise.contactNames.load(statement);
+		// Lookups run while other users change projects, so they read from the project snapshots
+		Poise.keepSnapshots = true;
+		try {
+			Poise.initialiseProjects(projects, statement);
+		} catch (java.io.IOException e) {
+			// Only the journal writes files, and it is not used here
+			throw new SQLException(e);
+		}
+		System.out.println(projects.size() + " projects loaded in " + ((System.nanoTime() - loadStart) / 1000000) + " ms.");
+		if (projects.isEmpty()) {
+			System.out.println("There are no projects. Run with --generate=count to add projects first.");
+			return;
+		}
+
+		// Split the open projects between the users
+		ArrayList<ArrayList<Project>> partitions = new ArrayList<>();
+		for (int user = 0; user < users; user++) {
+			partitions.add(new ArrayList<>());
+		}
+		int next = 0;
+		for (Project project : projects) {
+			if (!project.isFinalised()) {
+				partitions.get(next % users).add(project);
+				next += 1;
+			}
+		}
+
+		// Each user records the type and time (in nanoseconds) of each operation
+		byte[][] types = new byte[users][operationsPerUser];
+		long[][] times = new long[users][operationsPerUser];
+
+		// The menu methods print to the console, which is not part of the measurement
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(users);
+		ArrayList<Future<Void>> futures = new ArrayList<>();
+		try {
+			for (int user = 0; user < users; user++) {
+				int userNumber = user;
+				futures.add(executor.submit(() -> {
+					runUser(userNumber, projects, partitions.get(userNumber), types[userNumber], times[userNumber]);
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("The workload was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("The workload failed.", e.getCause());
+		} finally {
+			executor.shutdownNow();
+			System.setOut(console);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		printReport(types, times, seconds);
+		statement.close();
+		connection.close();
+	}
+
+	/**
+	 * Runs the operations of one simulated user, on the user's own connection.
+	 */
+	private void runUser(int user, ArrayList<Project> projects, ArrayList<Project> openProjects, byte[] types, long[] times) throws SQLException {
+		Connection connection = Poise.connectToDatabase(url);
+		if (connection == null) {
+			throw new SQLException("The connection to the database failed.");
+		}
+		Random random = new Random(seed + user);
+		int totalWeight = 0;
+		for (int weight : weights) {
+			totalWeight += weight;
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			for (int i = 0; i < operationsPerUser; i++) {
+				// Choose the operation by weight
+				int choice = random.nextInt(totalWeight);
+				int operation = 0;
+				while (choice >= weights[operation]) {
+					choice -= weights[operation];
+					operation += 1;
+				}
+				// Edits need an open project of the user's own
+				if (openProjects.isEmpty()) {
+					operation = LOOKUP;
+				}
+				Project project = (operation == LOOKUP) ? projects.get(random.nextInt(projects.size()))
+						: openProjects.get(random.nextInt(openProjects.size()));
+
+				long operationStart = System.nanoTime();
+				switch (operation) {
+				case LOOKUP:
+					Poise.printSelectedProject(projects, new Scanner(project.getProjectNum() + "\n"));
+					break;
+				case PAYMENT:
+					Poise.updatePaid(project, new Scanner((100 + random.nextInt(50000)) + ".00\n"), statement);
+					break;
+				case DEADLINE:
+					Poise.updateDeadline(project, new Scanner(LocalDate.now().plusDays(random.nextInt(720)) + "\n"), statement);
+					break;
+				case CONTRACTOR:
+					Poise.updateContractor(project, new Scanner("Workload Contractor " + user + "-" + i + "\n0821234567\n"
+							+ "contractor" + user + "-" + i + "@example.co.za\n1 Test Road\n"), statement, connection);
+					break;
+				case FINALISE:
+					Poise.finaliseProject(project, statement);
+					openProjects.remove(project);
+				}
+				times[i] = System.nanoTime() - operationStart;
+				types[i] = (byte) operation;
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Prints the throughput and the percentile times of each operation.
+	 */
+	private void printReport(byte[][] types, long[][] times, double seconds) {
+		System.out.println();
+		System.out.println(String.format(Locale.US, "%-12s%10s%12s%12s%12s", "Operation", "Count", "p50 (ms)", "p95 (ms)", "p99 (ms)"));
+		for (int operation = 0; operation < OPERATIONS.length; operation++) {
+			// Join the times of all users
+			long[] operationTimes = new long[users * operationsPerUser];
+			int count = 0;
+			for (int user = 0; user < users; user++) {
+				for (int i = 0; i < operationsPerUser; i++) {
+					if (types[user][i] == operation) {
+						operationTimes[count] = times[user][i];
+						count += 1;
+					}
+				}
+			}
+			printLine(OPERATIONS[operation], Arrays.copyOf(operationTimes, count));
+		}
+		long[] all = new long[users * operationsPerUser];
+		for (int user = 0; user < users; user++) {
+			System.arraycopy(times[user], 0, all, user * operationsPerUser, operationsPerUser);
+		}
+		printLine("all", all);
+		System.out.println();
+		System.out.println(String.format(Locale.US, "%d operations by %d users in %.2f s: %.1f operations per second.",
+				all.length, users, seconds, all.length / seconds));
+	}
+
+	private static void printLine(String name, long[] operationTimes) {
+		Arrays.sort(operationTimes);
+		System.out.println(String.format(Locale.US, "%-12s%10d%12.3f%12.3f%12.3f", name, operationTimes.length,
+				percentile(operationTimes, 50), percentile(operationTimes, 95), percentile(operationTimes, 99)));
+	}
+
+	/**
+	 * Gets a percentile of sorted times, in milliseconds.
+	 */
+	private static double percentile(long[] sortedTimes, int percent) {
+		if (sortedTimes.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percent / 100.0 * sortedTimes.length) - 1;
+		return sortedTimes[Math.max(0, index)] / 1e6;
+	}
+
+	/**
+	 * Runs the workload from the command line.
+	 * <p>
+	 * Arguments: --url=JDBC URL (default the embedded H2 database), --generate=count to create the
+	 * tables and add generated projects first, --users=count (default 8), --operations=count for
+	 * each user (default 1000), --seed=seed (default 42) and --mix=weights for lookups, payments,
+	 * deadline changes, contractor updates and finalisations (default 50,20,15,10,5).
+	 * @param args The command line arguments.
+	 */
+	public static void main(String[] args) {
+		String url = Poise.getOption(args, "--url");
+		String generate = Poise.getOption(args, "--generate");
+		String users = Poise.getOption(args, "--users");
+		String operations = Poise.getOption(args, "--operations");
+		String seed = Poise.getOption(args, "--seed");
+		String mix = Poise.getOption(args, "--mix");
+		if (url == null) {
+			url = EMBEDDED_URL;
+		}
+		int[] weights = {50, 20, 15, 10, 5};
+		if (mix != null) {
+			String[] values = mix.split(",");
+			for (int i = 0; i < weights.length; i++) {
+				weights[i] = (i < values.length) ? Integer.parseInt(values[i].trim()) : 0;
+			}
+		}
+		long seedValue = (seed == null) ? 42 : Long.parseLong(seed);
+
+		try {
+			// Fill the database first if required (the embedded database starts empty)
+			if (generate != null) {
+				Connection connection = Poise.connectToDatabase(url);
+				if (connection == null) {
+					return;
+				}
+				Statement statement = connection.createStatement();
+				DataGenerator.createTables(statement);
+				new DataGenerator(seedValue).generate(connection, statement, Integer.parseInt(generate));
+				statement.close();
+				connection.close();
+			}
+			new WorkloadDriver(url, (users == null) ? 8 : Integer.parseInt(users),
+					(operations == null) ? 1000 : Integer.parseInt(operations), weights, seedValue).run();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}